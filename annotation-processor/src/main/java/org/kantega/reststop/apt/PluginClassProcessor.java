@@ -40,11 +40,13 @@ public class PluginClassProcessor extends AbstractProcessor {
 
     private Set<String> pluginClasses = new TreeSet<>();
     private File pluginsDescriptorFile;
+    private PluginDescriptorGenerator descriptorGenerator;
 
 
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
         super.init(processingEnv);
+        descriptorGenerator = new PluginDescriptorGenerator(processingEnv);
         try {
             FileObject resource = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT,
                     "",
@@ -137,6 +139,12 @@ public class PluginClassProcessor extends AbstractProcessor {
                     throw new RuntimeException(e);
                 }
 
+                try {
+                    descriptorGenerator.generate(clazzElem);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+
                 pluginClasses.add(clazzElem.getQualifiedName().toString());
 
 
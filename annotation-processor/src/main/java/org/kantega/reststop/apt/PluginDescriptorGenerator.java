@@ -0,0 +1,272 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.apt;
+
+import org.kantega.reststop.api.Config;
+import org.kantega.reststop.api.Export;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.*;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Writes a descriptor with everything the plugin loader otherwise finds by reflection, and a factory class
+ * constructing the plugin without reflection. Plugin classes the factory can't be generated for are left
+ * to the reflective plugin loader.
+ */
+class PluginDescriptorGenerator {
+
+    static final String FACTORY_SUFFIX = "_PluginFactory";
+    static final String DESCRIPTOR_SUFFIX = ".plugin-descriptor";
+
+    private final ProcessingEnvironment processingEnv;
+
+    PluginDescriptorGenerator(ProcessingEnvironment processingEnv) {
+        this.processingEnv = processingEnv;
+    }
+
+    void generate(TypeElement clazz) throws IOException {
+        if (clazz.getNestingKind() != NestingKind.TOP_LEVEL
+                || !clazz.getModifiers().contains(Modifier.PUBLIC)
+                || clazz.getModifiers().contains(Modifier.ABSTRACT)) {
+            return;
+        }
+
+        List<ExecutableElement> constructors = new ArrayList<>();
+        List<VariableElement> exportFields = new ArrayList<>();
+        List<ExecutableElement> preDestroyMethods = new ArrayList<>();
+
+        for (Element enclosed : clazz.getEnclosedElements()) {
+            if (enclosed.getKind() == ElementKind.CONSTRUCTOR) {
+                constructors.add((ExecutableElement) enclosed);
+            } else if (enclosed.getKind() == ElementKind.FIELD && enclosed.getAnnotation(Export.class) != null) {
+                exportFields.add((VariableElement) enclosed);
+            } else if (enclosed.getKind() == ElementKind.METHOD && isPreDestroy(enclosed)) {
+                preDestroyMethods.add((ExecutableElement) enclosed);
+            }
+        }
+
+        if (constructors.size() != 1 || !constructors.get(0).getModifiers().contains(Modifier.PUBLIC)) {
+            return;
+        }
+
+        Properties descriptor = new Properties();
+        List<String> casts = new ArrayList<>();
+
+        List<? extends VariableElement> parameters = constructors.get(0).getParameters();
+        descriptor.setProperty("parameters", String.valueOf(parameters.size()));
+        for (int i = 0; i < parameters.size(); i++) {
+            VariableElement parameter = parameters.get(i);
+            String prefix = "parameter." + i + ".";
+            TypeMirror type = parameter.asType();
+            if (type.getKind() == TypeKind.ERROR) {
+                return;
+            }
+            casts.add(processingEnv.getTypeUtils().erasure(type).toString());
+
+            Config config = parameter.getAnnotation(Config.class);
+            if (config != null) {
+                if (isType(type, "java.util.Properties")) {
+                    descriptor.setProperty(prefix + "kind", "properties");
+                } else {
+                    String name = config.property().trim().isEmpty() ? parameter.getSimpleName().toString() : config.property();
+                    descriptor.setProperty(prefix + "kind", "config");
+                    descriptor.setProperty(prefix + "type", type.getKind().isPrimitive() ? type.toString() : binaryName(type));
+                    descriptor.setProperty(prefix + "name", name);
+                    descriptor.setProperty(prefix + "defaultValue", config.defaultValue());
+                    descriptor.setProperty(prefix + "required", String.valueOf(config.required()));
+                }
+            } else if (isType(type, "java.util.Collection")) {
+                TypeMirror element = typeArgument(type);
+                if (element == null) {
+                    return;
+                }
+                if (isType(element, "org.kantega.reststop.api.PluginExport")) {
+                    TypeMirror exported = typeArgument(element);
+                    if (exported == null || isParameterized(exported)) {
+                        return;
+                    }
+                    descriptor.setProperty(prefix + "kind", "exports");
+                    descriptor.setProperty(prefix + "type", binaryName(exported));
+                } else {
+                    if (isParameterized(element)) {
+                        return;
+                    }
+                    descriptor.setProperty(prefix + "kind", "services");
+                    descriptor.setProperty(prefix + "type", binaryName(element));
+                }
+            } else if (type.getKind() == TypeKind.DECLARED) {
+                descriptor.setProperty(prefix + "kind", "service");
+                descriptor.setProperty(prefix + "type", binaryName(type));
+            } else {
+                return;
+            }
+        }
+
+        List<String> exportAccessors = new ArrayList<>();
+        descriptor.setProperty("exports", String.valueOf(exportFields.size()));
+        for (int i = 0; i < exportFields.size(); i++) {
+            VariableElement field = exportFields.get(i);
+            String prefix = "export." + i + ".";
+            TypeMirror type = field.asType();
+            boolean collection = isType(type, "java.util.Collection");
+            TypeMirror exported = collection ? typeArgument(type) : type;
+            if (exported == null || exported.getKind() != TypeKind.DECLARED || collection && isParameterized(exported)) {
+                return;
+            }
+            boolean accessible = !field.getModifiers().contains(Modifier.PRIVATE);
+            descriptor.setProperty(prefix + "field", field.getSimpleName().toString());
+            descriptor.setProperty(prefix + "type", binaryName(exported));
+            descriptor.setProperty(prefix + "collection", String.valueOf(collection));
+            descriptor.setProperty(prefix + "accessible", String.valueOf(accessible));
+            exportAccessors.add(accessible ? "plugin." + field.getSimpleName() : "null");
+        }
+
+        for (ExecutableElement method : preDestroyMethods) {
+            if (!method.getModifiers().contains(Modifier.PUBLIC)
+                    || method.getReturnType().getKind() != TypeKind.VOID
+                    || !method.getParameters().isEmpty()) {
+                return;
+            }
+        }
+        descriptor.setProperty("preDestroy", preDestroyMethods.stream()
+                .map(m -> m.getSimpleName().toString())
+                .collect(Collectors.joining(",")));
+
+        PackageElement packageElement = (PackageElement) clazz.getEnclosingElement();
+        String factoryName = clazz.getSimpleName() + FACTORY_SUFFIX;
+        String packageName = packageElement.getQualifiedName().toString();
+        descriptor.setProperty("factory", packageName.isEmpty() ? factoryName : packageName + "." + factoryName);
+
+        writeFactory(clazz, packageName, factoryName, casts, exportAccessors, preDestroyMethods);
+        writeDescriptor(clazz, packageElement, descriptor);
+    }
+
+    private void writeFactory(TypeElement clazz, String packageName, String factoryName, List<String> casts, List<String> exportAccessors, List<ExecutableElement> preDestroyMethods) throws IOException {
+        String pluginType = clazz.getQualifiedName().toString();
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("// Generated by ").append(PluginClassProcessor.class.getName()).append("\n");
+        source.append("public final class ").append(factoryName)
+                .append(" implements org.kantega.reststop.api.PluginFactory<").append(pluginType).append("> {\n\n");
+
+        source.append("    @Override\n");
+        source.append("    @SuppressWarnings(\"unchecked\")\n");
+        source.append("    public ").append(pluginType).append(" create(Object[] p) throws Exception {\n");
+        source.append("        return new ").append(pluginType).append("(");
+        for (int i = 0; i < casts.size(); i++) {
+            source.append(i == 0 ? "" : ", ").append("(").append(casts.get(i)).append(") p[").append(i).append("]");
+        }
+        source.append(");\n    }\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public Object getExport(").append(pluginType).append(" plugin, int index) {\n");
+        source.append("        switch (index) {\n");
+        for (int i = 0; i < exportAccessors.size(); i++) {
+            source.append("            case ").append(i).append(": return ").append(exportAccessors.get(i)).append(";\n");
+        }
+        source.append("            default: throw new IndexOutOfBoundsException(String.valueOf(index));\n");
+        source.append("        }\n    }\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public void preDestroy(").append(pluginType).append(" plugin) {\n");
+        if (!preDestroyMethods.isEmpty()) {
+            // Every method is called, the first failure is thrown afterwards with the others suppressed
+            source.append("        RuntimeException failure = null;\n");
+            for (ExecutableElement method : preDestroyMethods) {
+                source.append("        try {\n");
+                source.append("            plugin.").append(method.getSimpleName()).append("();\n");
+                source.append("        } catch (Exception e) {\n");
+                source.append("            if (failure == null) {\n");
+                source.append("                failure = new RuntimeException(e);\n");
+                source.append("            } else {\n");
+                source.append("                failure.addSuppressed(e);\n");
+                source.append("            }\n");
+                source.append("        }\n");
+            }
+            source.append("        if (failure != null) {\n");
+            source.append("            throw failure;\n");
+            source.append("        }\n");
+        }
+        source.append("    }\n}\n");
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(
+                packageName.isEmpty() ? factoryName : packageName + "." + factoryName, clazz);
+        try (Writer writer = file.openWriter()) {
+            writer.append(source);
+        }
+    }
+
+    private void writeDescriptor(TypeElement clazz, PackageElement packageElement, Properties descriptor) throws IOException {
+        StringWriter content = new StringWriter();
+        descriptor.store(content, null);
+
+        FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT,
+                packageElement.getQualifiedName(),
+                clazz.getSimpleName() + DESCRIPTOR_SUFFIX,
+                clazz);
+
+        try (Writer writer = new OutputStreamWriter(file.openOutputStream(), "iso-8859-1")) {
+            // Leave out the timestamp comment so builds are repeatable
+            for (String line : content.toString().split("\n")) {
+                if (!line.startsWith("#")) {
+                    writer.append(line).append("\n");
+                }
+            }
+        }
+    }
+
+    private boolean isPreDestroy(Element element) {
+        return element.getAnnotationMirrors().stream()
+                .anyMatch(a -> a.getAnnotationType().toString().equals("javax.annotation.PreDestroy"));
+    }
+
+    private boolean isType(TypeMirror type, String className) {
+        return type.getKind() == TypeKind.DECLARED
+                && ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals(className);
+    }
+
+    private boolean isParameterized(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && !((DeclaredType) type).getTypeArguments().isEmpty();
+    }
+
+    private TypeMirror typeArgument(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+        if (arguments.size() != 1 || arguments.get(0).getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        return arguments.get(0);
+    }
+
+    private String binaryName(TypeMirror type) {
+        return processingEnv.getElementUtils().getBinaryName((TypeElement) ((DeclaredType) type).asElement()).toString();
+    }
+}
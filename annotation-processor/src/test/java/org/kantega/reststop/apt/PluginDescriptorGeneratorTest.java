@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.apt;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kantega.reststop.api.PluginFactory;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ */
+public class PluginDescriptorGeneratorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldGenerateWorkingFactory() throws Exception {
+        File classes = compile("example.ExamplePlugin",
+                "package example;\n" +
+                "\n" +
+                "import org.kantega.reststop.api.Config;\n" +
+                "import org.kantega.reststop.api.Export;\n" +
+                "import org.kantega.reststop.api.Plugin;\n" +
+                "\n" +
+                "import javax.annotation.PreDestroy;\n" +
+                "import java.util.ArrayList;\n" +
+                "import java.util.List;\n" +
+                "\n" +
+                "@Plugin\n" +
+                "public class ExamplePlugin {\n" +
+                "    public final List<String> destroyed = new ArrayList<>();\n" +
+                "\n" +
+                "    @Export\n" +
+                "    final CharSequence greeting;\n" +
+                "\n" +
+                "    public ExamplePlugin(@Config(defaultValue = \"Hello\") String greeting) {\n" +
+                "        this.greeting = greeting;\n" +
+                "    }\n" +
+                "\n" +
+                "    @PreDestroy\n" +
+                "    public void first() {\n" +
+                "        destroyed.add(\"first\");\n" +
+                "        throw new IllegalStateException(\"first\");\n" +
+                "    }\n" +
+                "\n" +
+                "    @PreDestroy\n" +
+                "    public void second() throws Exception {\n" +
+                "        destroyed.add(\"second\");\n" +
+                "        throw new Exception(\"second\");\n" +
+                "    }\n" +
+                "\n" +
+                "    @PreDestroy\n" +
+                "    public void third() {\n" +
+                "        destroyed.add(\"third\");\n" +
+                "    }\n" +
+                "}\n");
+
+        Properties descriptor = new Properties();
+        try (InputStream in = new FileInputStream(new File(classes, "example/ExamplePlugin" + PluginDescriptorGenerator.DESCRIPTOR_SUFFIX))) {
+            descriptor.load(in);
+        }
+        assertThat(descriptor.getProperty("parameters"), is("1"));
+        assertThat(descriptor.getProperty("parameter.0.kind"), is("config"));
+        assertThat(descriptor.getProperty("parameter.0.name"), is("greeting"));
+        assertThat(descriptor.getProperty("export.0.field"), is("greeting"));
+        assertThat(descriptor.getProperty("export.0.type"), is("java.lang.CharSequence"));
+        assertThat(descriptor.getProperty("preDestroy"), is("first,second,third"));
+        assertThat(descriptor.getProperty("factory"), is("example.ExamplePlugin" + PluginDescriptorGenerator.FACTORY_SUFFIX));
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{classes.toURI().toURL()}, getClass().getClassLoader())) {
+            PluginFactory<Object> factory = (PluginFactory<Object>) loader.loadClass(descriptor.getProperty("factory")).newInstance();
+
+            Object plugin = factory.create(new Object[]{"Hi"});
+            assertThat(factory.getExport(plugin, 0), is((Object) "Hi"));
+
+            try {
+                factory.preDestroy(plugin);
+                fail("Expected the first failure to be thrown");
+            } catch (RuntimeException e) {
+                assertThat(e.getCause().getMessage(), is("first"));
+                assertThat(e.getSuppressed().length, is(1));
+                assertThat(e.getSuppressed()[0].getMessage(), is("second"));
+            }
+            assertThat(plugin.getClass().getField("destroyed").get(plugin), is((Object) Arrays.asList("first", "second", "third")));
+        }
+    }
+
+    private File compile(String className, String source) throws Exception {
+        File sources = folder.newFolder("sources");
+        File classes = folder.newFolder("classes");
+        File file = new File(sources, className.replace('.', '/') + ".java");
+        assertTrue(file.getParentFile().mkdirs());
+        Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            List<String> options = Arrays.asList("-d", classes.getPath(),
+                    "-classpath", System.getProperty("java.class.path"));
+            JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics, options, null,
+                    files.getJavaFileObjects(file));
+            task.setProcessors(Collections.singletonList(new PluginClassProcessor()));
+            assertTrue(diagnostics.getDiagnostics().toString(), task.call());
+        }
+        return classes;
+    }
+}
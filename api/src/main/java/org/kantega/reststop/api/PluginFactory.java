@@ -0,0 +1,35 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.api;
+
+/**
+ * Constructs and tears down instances of a plugin class without reflection.
+ * Implementations are generated by the Reststop annotation processor next to each {@link Plugin} class.
+ */
+public interface PluginFactory<P> {
+
+    P create(Object[] parameters) throws Exception;
+
+    /**
+     * Reads an {@link Export} field. Private fields can not be read from generated code and are read by reflection instead.
+     *
+     * @param index index of the field among the plugin's exported fields, in declaration order
+     */
+    Object getExport(P plugin, int index);
+
+    void preDestroy(P plugin);
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kantega.reststop.servlets;
+
+import org.kantega.reststop.api.PluginExport;
+
+/**
+ *
+ */
+class BenchmarkExport<T> implements PluginExport<T> {
+    private final Class<T> type;
+    private final T export;
+
+    BenchmarkExport(Class<T> type, T export) {
+        this.type = type;
+        this.export = export;
+    }
+
+    @Override
+    public Class<T> getType() {
+        return type;
+    }
+
+    @Override
+    public T getExport() {
+        return export;
+    }
+
+    @Override
+    public ClassLoader getClassLoader() {
+        return BenchmarkExport.class.getClassLoader();
+    }
+
+    @Override
+    public Object getPlugin() {
+        return this;
+    }
+}
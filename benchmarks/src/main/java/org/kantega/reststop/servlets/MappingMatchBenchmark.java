@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kantega.reststop.servlets;
+
+import org.kantega.reststop.servlet.api.FilterPhase;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares matching a single mapping through {@link ReststopInitializer.MappingWrappedFilter} with resolving it through the
+ * {@link PluginFilterIndex} used by the delegating filter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingMatchBenchmark {
+
+    private ReststopInitializer.MappingWrappedFilter exactFilter;
+    private ReststopInitializer.MappingWrappedFilter wildcardFilter;
+    private PluginFilterIndex exactIndex;
+    private PluginFilterIndex wildcardIndex;
+
+    private final MockHttpServletRequest request = new MockHttpServletRequest("/ctx", "/ctx/api/users/42");
+
+    @Setup
+    public void setUp() {
+        exactFilter = new ReststopInitializer.MappingWrappedFilter(new PassThroughFilter(), new String[] {"/api/users/42"}, FilterPhase.USER);
+        wildcardFilter = new ReststopInitializer.MappingWrappedFilter(new PassThroughFilter(), new String[] {"/api/*"}, FilterPhase.USER);
+        exactIndex = new PluginFilterIndex(Collections.singletonList(new BenchmarkExport<>(javax.servlet.Filter.class, exactFilter)));
+        wildcardIndex = new PluginFilterIndex(Collections.singletonList(new BenchmarkExport<>(javax.servlet.Filter.class, wildcardFilter)));
+    }
+
+    @Benchmark
+    public boolean exactMapping() {
+        return exactFilter.mappingMatchesRequest(request);
+    }
+
+    @Benchmark
+    public boolean wildcardMapping() {
+        return wildcardFilter.mappingMatchesRequest(request);
+    }
+
+    @Benchmark
+    public Object exactMappingIndexed() {
+        return exactIndex.resolve(request);
+    }
+
+    @Benchmark
+    public Object wildcardMappingIndexed() {
+        return wildcardIndex.resolve(request);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kantega.reststop.servlets;
+
+import org.kantega.reststop.api.PluginExport;
+import org.kantega.reststop.servlet.api.FilterPhase;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a full pass through {@link ReststopInitializer.PluginDelegatingFilter} with a varying number of mapped filters.
+ * Every filter is mapped to its own path, so a request is only matched by one of them. Runs with and without filter timing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PluginDelegatingFilterBenchmark {
+
+    @Param({"1", "10", "50", "200"})
+    private int filterCount;
+
+    @Param({"false", "true"})
+    private boolean timed;
+
+    private ReststopInitializer.PluginDelegatingFilter delegatingFilter;
+
+    private MockHttpServletRequest matchingRequest;
+    private MockHttpServletRequest unmatchedRequest;
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    private final FilterChain endOfChain = (request, response) -> {};
+
+    @Setup
+    public void setUp() {
+        delegatingFilter = new ReststopInitializer.PluginDelegatingFilter(timed);
+        ReststopInitializer.DefaultServletBuilder servletBuilder = new ReststopInitializer.DefaultServletBuilder(null, delegatingFilter);
+
+        FilterPhase[] phases = FilterPhase.values();
+        List<PluginExport<Filter>> filters = new ArrayList<>();
+        for (int i = 0; i < filterCount; i++) {
+            Filter filter = servletBuilder.filter(new PassThroughFilter(), phases[i % phases.length], "/service" + i + "/*", "/service" + i);
+            filters.add(new BenchmarkExport<>(Filter.class, filter));
+        }
+        delegatingFilter.deploy(filters);
+
+        matchingRequest = new MockHttpServletRequest("/ctx", "/ctx/service" + (filterCount / 2) + "/resources/42");
+        unmatchedRequest = new MockHttpServletRequest("/ctx", "/ctx/unknown/resources/42");
+    }
+
+    @Benchmark
+    public void matchingRequest() throws IOException, ServletException {
+        delegatingFilter.doFilter(matchingRequest, response, endOfChain);
+    }
+
+    @Benchmark
+    public void unmatchedRequest() throws IOException, ServletException {
+        delegatingFilter.doFilter(unmatchedRequest, response, endOfChain);
+    }
+}
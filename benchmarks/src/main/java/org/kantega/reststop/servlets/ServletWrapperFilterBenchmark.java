@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kantega.reststop.servlets;
+
+import org.kantega.reststop.servlet.api.ServletBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the servlet path and path info rewriting done when a plugin servlet is invoked through its wrapper filter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServletWrapperFilterBenchmark {
+
+    private final PathReadingServlet servlet = new PathReadingServlet();
+    private Filter servletWrapper;
+
+    private final MockHttpServletRequest request = new MockHttpServletRequest("/ctx", "/ctx/servlet/path/info");
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    private final FilterChain endOfChain = (request, response) -> {};
+
+    @Setup
+    public void setUp() {
+        ReststopInitializer.DefaultServletBuilder servletBuilder = new ReststopInitializer.DefaultServletBuilder(null, new ReststopInitializer.PluginDelegatingFilter());
+        servletWrapper = ((ReststopInitializer.MappingWrappedFilter) servletBuilder.servlet(servlet, "/servlet/*")).getFilter();
+        request.setAttribute(ServletBuilder.MATCHED_MAPPING, "/servlet/*");
+    }
+
+    @Benchmark
+    public String rewritePaths() throws IOException, ServletException {
+        servletWrapper.doFilter(request, response, endOfChain);
+        return servlet.pathInfo;
+    }
+
+    private static class PathReadingServlet extends HttpServlet {
+        private String servletPath;
+        private String pathInfo;
+
+        @Override
+        protected void service(HttpServletRequest req, HttpServletResponse resp) {
+            servletPath = req.getServletPath();
+            pathInfo = req.getPathInfo();
+        }
+    }
+}
@@ -28,17 +28,69 @@ import java.util.concurrent.CopyOnWriteArraySet;
  *
  */
 public class DelegateClassLoader extends ClassLoader {
+
+    static {
+        registerAsParallelCapable();
+    }
+
     private final PluginClassLoader[] delegates;
 
+    // Delegates which can find entries in a directory, in delegate order
+    private final Map<String, PluginClassLoader[]> delegatesByDirectory;
+
+    // Delegates whose entries could not be listed, asked for everything
+    private final PluginClassLoader[] unindexedDelegates;
+
     private ConcurrentMap<String, Class> loadedClasses = new ConcurrentHashMap<>();
 
+    private final NegativeLookupCache missingClasses = new NegativeLookupCache(NegativeLookupCache.DEFAULT_MAX_SIZE);
+
     private Set<String> usedDelegates = new CopyOnWriteArraySet<>();
 
     public DelegateClassLoader(ClassLoader parentClassLoader, Set<PluginClassLoader> delegates) {
         super(parentClassLoader);
         this.delegates = delegates.toArray(new PluginClassLoader[delegates.size()]);
+
+        Map<String, List<PluginClassLoader>> byDirectory = new HashMap<>();
+        List<PluginClassLoader> unindexed = new ArrayList<>();
+        for (PluginClassLoader delegate : this.delegates) {
+            Set<String> directories = getReachableDirectories(delegate);
+            if (directories == null) {
+                unindexed.add(delegate);
+            } else {
+                for (String directory : directories) {
+                    byDirectory.computeIfAbsent(directory, d -> new ArrayList<>(1)).add(delegate);
+                }
+            }
+        }
+        delegatesByDirectory = new HashMap<>();
+        byDirectory.forEach((directory, loaders) -> delegatesByDirectory.put(directory, loaders.toArray(new PluginClassLoader[loaders.size()])));
+        unindexedDelegates = unindexed.toArray(new PluginClassLoader[unindexed.size()]);
     }
 
+    /**
+     * Directories the delegate finds entries in, either itself or through the delegates of its own parent.
+     */
+    private static Set<String> getReachableDirectories(PluginClassLoader delegate) {
+        Set<String> own = delegate.getDirectories();
+        if (own == null) {
+            return null;
+        }
+        ClassLoader parent = delegate.getParent();
+        if (parent instanceof ResourceHidingClassLoader) {
+            parent = parent.getParent();
+        }
+        if (parent instanceof DelegateClassLoader) {
+            DelegateClassLoader inherited = (DelegateClassLoader) parent;
+            if (inherited.unindexedDelegates.length > 0) {
+                return null;
+            }
+            Set<String> directories = new HashSet<>(own);
+            directories.addAll(inherited.delegatesByDirectory.keySet());
+            return directories;
+        }
+        return own;
+    }
 
     @Override
     public Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
@@ -47,23 +99,80 @@ public class DelegateClassLoader extends ClassLoader {
         if(loadedClass != null) {
             return loadedClass;
         }
-        try {
-            return getParent().loadClass(name);
-        } catch (ClassNotFoundException e) {
+        if(missingClasses.isMissing(name)) {
+            throw new NegativeLookupCache.MissingClassException(name);
+        }
 
-            for (PluginClassLoader delegate : delegates) {
-                try {
-                    Class<?> aClass = delegate.loadClass(name);
-                    loadedClasses.putIfAbsent(aClass.getName(), aClass);
-                    usedDelegates.add(delegate.getPluginInfo().getPluginId());
-                    return aClass;
-                } catch (ClassNotFoundException e1) {
+        PluginClassLoader[] owners = delegatesByDirectory.get(getDirectory(name));
+        if(owners == null && unindexedDelegates.length == 0) {
+            // No delegate has the package, so only the parent can have the class
+            try {
+                return getParent().loadClass(name);
+            } catch (ClassNotFoundException e) {
+                missingClasses.addMissing(name);
+                throw e;
+            }
+        }
 
+        // The delegates ask the same parent first, so the first delegate having the class is asked to load it
+        String classFile = name.replace('.', '/') + ".class";
+        if (owners != null) {
+            for (PluginClassLoader delegate : owners) {
+                if (delegate.hasClass(name, classFile)) {
+                    return loadFromDelegate(delegate, name);
                 }
+            }
+        }
+        for (PluginClassLoader delegate : unindexedDelegates) {
+            if (delegate.hasClass(name, classFile)) {
+                return loadFromDelegate(delegate, name);
+            }
+        }
+        missingClasses.addMissing(name);
+        throw new NegativeLookupCache.MissingClassException(name);
+    }
+
+    private Class<?> loadFromDelegate(PluginClassLoader delegate, String name) throws ClassNotFoundException {
+        Class<?> aClass = delegate.loadClass(name);
+        loadedClasses.putIfAbsent(aClass.getName(), aClass);
+        usedDelegates.add(delegate.getPluginInfo().getPluginId());
+        return aClass;
+    }
+
+    private static String getDirectory(String className) {
+        int dot = className.lastIndexOf('.');
+        return dot == -1 ? "" : className.substring(0, dot).replace('.', '/');
+    }
+
+    private static String getResourceDirectory(String name) {
+        int slash = name.lastIndexOf('/');
+        return slash == -1 ? "" : name.substring(0, slash);
+    }
+
+    /**
+     * The delegates which may have the resource, in delegate order.
+     */
+    private List<PluginClassLoader> getCandidates(String name) {
+        PluginClassLoader[] owners = delegatesByDirectory.get(getResourceDirectory(name));
+        if (unindexedDelegates.length == 0) {
+            return owners == null ? Collections.emptyList() : Arrays.asList(owners);
+        }
+        List<PluginClassLoader> candidates = new ArrayList<>();
+        for (PluginClassLoader delegate : delegates) {
+            if (contains(unindexedDelegates, delegate) || owners != null && contains(owners, delegate)) {
+                candidates.add(delegate);
+            }
+        }
+        return candidates;
+    }
 
+    private static boolean contains(PluginClassLoader[] loaders, PluginClassLoader loader) {
+        for (PluginClassLoader candidate : loaders) {
+            if (candidate == loader) {
+                return true;
             }
-            throw new ClassNotFoundException(name);
         }
+        return false;
     }
 
     @Override
@@ -72,7 +181,7 @@ public class DelegateClassLoader extends ClassLoader {
         if (resource != null) {
             return resource;
         }
-        for (ClassLoader delegate : delegates) {
+        for (ClassLoader delegate : getCandidates(name)) {
             resource = delegate.getResource(name);
             if (resource != null) {
                 return resource;
@@ -85,7 +194,7 @@ public class DelegateClassLoader extends ClassLoader {
     protected Enumeration<URL> findResources(String name) throws IOException {
         Enumeration<URL> parentResources = getParent().getResources(name);
         List<URL> delegateResources = null;
-        for (ClassLoader delegate : delegates) {
+        for (ClassLoader delegate : getCandidates(name)) {
             Enumeration<URL> resources = delegate.getResources(name);
             if(resources != null ) {
                 if(delegateResources == null) {
@@ -108,7 +217,28 @@ public class DelegateClassLoader extends ClassLoader {
     }
 
 
+    /**
+     * The plugin class loaders this class loader delegates to, in delegate order.
+     */
+    PluginClassLoader[] getDelegates() {
+        return delegates.clone();
+    }
+
     public boolean isParentUsed(PluginInfo parent) {
         return usedDelegates.contains(parent.getPluginId());
     }
+
+    /**
+     * Number of class lookups answered by the cache of missing classes.
+     */
+    public long getNegativeLookupHits() {
+        return missingClasses.getHits();
+    }
+
+    /**
+     * Number of class lookups which were not known to be missing and had to be looked up.
+     */
+    public long getNegativeLookupMisses() {
+        return missingClasses.getMisses();
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.classloaderutils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Names a class loader has looked for without finding them. When full, the names looked up least recently
+ * are evicted. Each name is stamped with the tick of its last lookup, so a hit takes no lock.
+ */
+class NegativeLookupCache {
+
+    static final int DEFAULT_MAX_SIZE = 10000;
+
+    private final int maxSize;
+    private final Map<String, Long> missing = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    NegativeLookupCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return true if the name is known to be missing
+     */
+    boolean isMissing(String name) {
+        Long tick = missing.get(name);
+        if (tick != null) {
+            missing.replace(name, tick, clock.incrementAndGet());
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        return false;
+    }
+
+    void addMissing(String name) {
+        if (missing.size() >= maxSize) {
+            evict();
+        }
+        missing.put(name, clock.incrementAndGet());
+    }
+
+    /**
+     * Removes the tenth of the names looked up least recently, so eviction is not repeated for every new name.
+     */
+    private synchronized void evict() {
+        int excess = missing.size() - maxSize + 1;
+        if (excess <= 0) {
+            return;
+        }
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(missing.entrySet());
+        entries.sort(Map.Entry.comparingByValue());
+        int remove = Math.min(entries.size(), Math.max(excess, maxSize / 10));
+        for (int i = 0; i < remove; i++) {
+            missing.remove(entries.get(i).getKey(), entries.get(i).getValue());
+        }
+    }
+
+    void clear() {
+        missing.clear();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Thrown for class names known to be missing, without the cost of filling in a stack trace.
+     */
+    static class MissingClassException extends ClassNotFoundException {
+        MissingClassException(String name) {
+            super(name);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
@@ -16,19 +16,46 @@
 
 package org.kantega.reststop.classloaderutils;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.net.URLStreamHandlerFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
 
 /**
  *
  */
 public class PluginClassLoader extends URLClassLoader {
 
+    static {
+        registerAsParallelCapable();
+    }
+
     private final PluginInfo pluginInfo;
 
     private final long creationTime;
 
+    private static final Set<String> UNLISTABLE = Collections.emptySet();
+
+    private volatile Set<String> directories;
+
+    private final NegativeLookupCache missingClasses = new NegativeLookupCache(NegativeLookupCache.DEFAULT_MAX_SIZE);
+
+    private final NegativeLookupCache missingResources = new NegativeLookupCache(NegativeLookupCache.DEFAULT_MAX_SIZE);
+
     public PluginClassLoader(PluginInfo pluginInfo, ClassLoader parent) {
         this(pluginInfo, new URL[0], parent);
     }
@@ -60,9 +87,140 @@ public class PluginClassLoader extends URLClassLoader {
         return pluginInfo;
     }
 
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        // Classes defined after a miss, such as generated proxies, are found before the cache is asked
+        Class<?> loaded = findLoadedClass(name);
+        if (loaded != null) {
+            if (resolve) {
+                resolveClass(loaded);
+            }
+            return loaded;
+        }
+        if (missingClasses.isMissing(name)) {
+            throw new NegativeLookupCache.MissingClassException(name);
+        }
+        try {
+            return super.loadClass(name, resolve);
+        } catch (ClassNotFoundException e) {
+            // Both the parent and findClass have failed
+            missingClasses.addMissing(name);
+            throw e;
+        }
+    }
+
+    /**
+     * Whether this class loader has defined the class, or it or its parents can find its class file, without loading it.
+     */
+    boolean hasClass(String name, String classFile) {
+        return findLoadedClass(name) != null || getResource(classFile) != null;
+    }
+
+    @Override
+    public URL findResource(String name) {
+        if (missingResources.isMissing(name)) {
+            return null;
+        }
+        URL resource = super.findResource(name);
+        if (resource == null) {
+            missingResources.addMissing(name);
+        }
+        return resource;
+    }
+
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        if (missingResources.isMissing(name)) {
+            return Collections.emptyEnumeration();
+        }
+        Enumeration<URL> resources = super.findResources(name);
+        if (!resources.hasMoreElements()) {
+            missingResources.addMissing(name);
+        }
+        return resources;
+    }
+
     @Override
     public void addURL(URL url) {
         super.addURL(url);
+        directories = null;
+        missingClasses.clear();
+        missingResources.clear();
+    }
+
+    /**
+     * Number of class and resource lookups answered by the cache of names known to be missing.
+     */
+    public long getNegativeLookupHits() {
+        return missingClasses.getHits() + missingResources.getHits();
+    }
+
+    /**
+     * Number of class and resource lookups which were not known to be missing and had to be looked up.
+     */
+    public long getNegativeLookupMisses() {
+        return missingClasses.getMisses() + missingResources.getMisses();
+    }
+
+    /**
+     * The directories holding entries on this class loader's own URLs, with '/' as separator and "" for the root.
+     * A class or resource this class loader finds itself, without asking its parent, is in one of these.
+     *
+     * @return the directories, or null if the URLs can't be listed, such as for remote URLs or JARs with a Class-Path manifest header
+     */
+    Set<String> getDirectories() {
+        Set<String> directories = this.directories;
+        if (directories == null) {
+            directories = new HashSet<>();
+            for (URL url : getURLs()) {
+                if (!addDirectories(url, directories)) {
+                    directories = UNLISTABLE;
+                    break;
+                }
+            }
+            if (directories != UNLISTABLE) {
+                directories = Collections.unmodifiableSet(directories);
+            }
+            this.directories = directories;
+        }
+        return directories == UNLISTABLE ? null : directories;
+    }
+
+    private static boolean addDirectories(URL url, Set<String> directories) {
+        File file;
+        try {
+            file = new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return false;
+        }
+        if (file.isDirectory()) {
+            Path root = file.toPath();
+            try (Stream<Path> files = Files.walk(root)) {
+                files.filter(Files::isRegularFile)
+                        .map(f -> root.relativize(f).getParent())
+                        .forEach(dir -> directories.add(dir == null ? "" : dir.toString().replace(File.separatorChar, '/')));
+            } catch (IOException | UncheckedIOException e) {
+                return false;
+            }
+        } else if (file.isFile()) {
+            try (JarFile jar = new JarFile(file)) {
+                Manifest manifest = jar.getManifest();
+                if (manifest != null && manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH) != null) {
+                    return false;
+                }
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    String name = entries.nextElement().getName();
+                    if (!name.endsWith("/")) {
+                        int slash = name.lastIndexOf('/');
+                        directories.add(slash == -1 ? "" : name.substring(0, slash));
+                    }
+                }
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public long getCreationTime() {
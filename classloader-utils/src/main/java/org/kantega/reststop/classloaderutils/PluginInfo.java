@@ -313,4 +313,8 @@ public class PluginInfo extends Artifact {
         }
         return priority;
     }
+
+    public synchronized void setPriority(int priority) {
+        this.priority = priority;
+    }
 }
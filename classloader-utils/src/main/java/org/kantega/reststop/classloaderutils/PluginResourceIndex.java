@@ -0,0 +1,254 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.classloaderutils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.*;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Finds resources below a path prefix in a set of plugin class loaders with map lookups instead of asking each class
+ * loader in turn. The entries of each class loader's JARs are listed when the index is created, together with the
+ * plugin class loaders each one reaches through the {@link DelegateClassLoader} of its dependencies. A lookup asks the
+ * parent shared by the plugin class loaders once, then probes the listed entries, which finds the same resource as
+ * asking each class loader for it parent first. Class loaders which can't be listed, such as those reading from
+ * directories during development, or those reaching one that can't, are asked directly as before.
+ *
+ * Create a new index when the set of class loaders changes.
+ */
+public class PluginResourceIndex {
+
+    private final String prefix;
+    private final Lookup[] lookups;
+
+    public PluginResourceIndex(Collection<PluginClassLoader> classLoaders, String prefix) {
+        this.prefix = prefix;
+
+        Map<PluginClassLoader, Optional<Entries>> listed = new HashMap<>();
+        Set<ClassLoader> askedRoots = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Entries> probed = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Lookup> lookups = new ArrayList<>();
+        for (PluginClassLoader classLoader : classLoaders) {
+            List<Entries> reached = new ArrayList<>();
+            if (reach(classLoader, listed, reached, Collections.newSetFromMap(new IdentityHashMap<>()))) {
+                ClassLoader root = getRoot(classLoader);
+                // Entries missing the resource for an earlier class loader miss it for this one too
+                reached.removeIf(entries -> !probed.add(entries));
+                lookups.add(new Lookup(classLoader, root != null && askedRoots.add(root) ? root : null,
+                        reached.toArray(new Entries[reached.size()])));
+            } else {
+                lookups.add(new Lookup(classLoader, null, null));
+            }
+        }
+        this.lookups = lookups.toArray(new Lookup[lookups.size()]);
+    }
+
+    /**
+     * Adds the entries the class loader finds after asking its root parent, in the order it asks for them: those of
+     * its dependencies first, then its own.
+     *
+     * @return false if any of them can't be listed
+     */
+    private boolean reach(PluginClassLoader classLoader, Map<PluginClassLoader, Optional<Entries>> listed, List<Entries> reached, Set<PluginClassLoader> visited) {
+        if (!visited.add(classLoader)) {
+            return true;
+        }
+        ClassLoader parent = classLoader.getParent();
+        if (parent instanceof ResourceHidingClassLoader) {
+            parent = parent.getParent();
+        }
+        if (parent instanceof DelegateClassLoader) {
+            for (PluginClassLoader delegate : ((DelegateClassLoader) parent).getDelegates()) {
+                if (!reach(delegate, listed, reached, visited)) {
+                    return false;
+                }
+            }
+        }
+        Optional<Entries> entries = listed.computeIfAbsent(classLoader, this::list);
+        if (!entries.isPresent()) {
+            return false;
+        }
+        reached.add(entries.get());
+        return true;
+    }
+
+    /**
+     * The first class loader above the plugin and dependency class loaders, usually the web application's.
+     */
+    private static ClassLoader getRoot(PluginClassLoader classLoader) {
+        ClassLoader parent = classLoader.getParent();
+        while (parent instanceof ResourceHidingClassLoader || parent instanceof DelegateClassLoader) {
+            parent = parent.getParent();
+        }
+        return parent;
+    }
+
+    /**
+     * @param path a resource path, optionally ending with a slash
+     * @return the first resource or directory with the given path, or null if no class loader has it
+     */
+    public Resource find(String path) {
+        String name = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        boolean indexed = name.startsWith(prefix);
+        for (Lookup lookup : lookups) {
+            if (!indexed || lookup.reached == null) {
+                URL url = lookup.classLoader.getResource(path);
+                if (url != null) {
+                    return new Resource(lookup.classLoader, url, isDirectory(url, lookup.classLoader, name));
+                }
+                continue;
+            }
+            if (lookup.root != null) {
+                URL url = lookup.root.getResource(path);
+                if (url != null) {
+                    return new Resource(lookup.classLoader, url, isDirectory(url, lookup.root, name));
+                }
+            }
+            for (Entries entries : lookup.reached) {
+                if (entries.directories.contains(name)) {
+                    return new Resource(lookup.classLoader, null, true);
+                }
+                if (entries.files.contains(name)) {
+                    URL url = entries.classLoader.findResource(name);
+                    if (url != null) {
+                        return new Resource(lookup.classLoader, url, false);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean isDirectory(URL resource, ClassLoader classLoader, String name) {
+        try {
+            if ("file".equals(resource.getProtocol())) {
+                return new File(resource.toURI()).isDirectory();
+            } else if ("jar".equals(resource.getProtocol())) {
+                return resource.getPath().endsWith("/") || classLoader.getResource(name + "/") != null;
+            }
+            return false;
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private Optional<Entries> list(PluginClassLoader classLoader) {
+        // Subclasses may resolve resources from elsewhere than their URLs
+        if (classLoader.getClass() != PluginClassLoader.class) {
+            return Optional.empty();
+        }
+        Entries entries = new Entries(classLoader);
+        for (URL url : classLoader.getURLs()) {
+            if (!list(url, entries)) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(entries);
+    }
+
+    private boolean list(URL url, Entries entries) {
+        File file;
+        try {
+            file = new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return false;
+        }
+        if (!file.isFile()) {
+            return false;
+        }
+        try (JarFile jar = new JarFile(file)) {
+            Manifest manifest = jar.getManifest();
+            if (manifest != null && manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH) != null) {
+                return false;
+            }
+            Enumeration<JarEntry> jarEntries = jar.entries();
+            while (jarEntries.hasMoreElements()) {
+                String name = jarEntries.nextElement().getName();
+                if (name.startsWith(prefix)) {
+                    if (name.endsWith("/")) {
+                        name = name.substring(0, name.length() - 1);
+                    } else {
+                        entries.files.add(name);
+                    }
+                    for (int slash = name.lastIndexOf('/'); slash >= prefix.length() - 1 && slash > 0; slash = name.lastIndexOf('/', slash - 1)) {
+                        entries.directories.add(name.substring(0, slash));
+                    }
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static class Lookup {
+        private final PluginClassLoader classLoader;
+        // The root parent, unless an earlier lookup asks it already
+        private final ClassLoader root;
+        // Null when the class loader is asked directly
+        private final Entries[] reached;
+
+        private Lookup(PluginClassLoader classLoader, ClassLoader root, Entries[] reached) {
+            this.classLoader = classLoader;
+            this.root = root;
+            this.reached = reached;
+        }
+    }
+
+    private static class Entries {
+        private final PluginClassLoader classLoader;
+        private final Set<String> files = new HashSet<>();
+        private final Set<String> directories = new HashSet<>();
+
+        private Entries(PluginClassLoader classLoader) {
+            this.classLoader = classLoader;
+        }
+    }
+
+    public static class Resource {
+        private final PluginClassLoader classLoader;
+        private final URL url;
+        private final boolean directory;
+
+        private Resource(PluginClassLoader classLoader, URL url, boolean directory) {
+            this.classLoader = classLoader;
+            this.url = url;
+            this.directory = directory;
+        }
+
+        public PluginClassLoader getClassLoader() {
+            return classLoader;
+        }
+
+        /**
+         * @return the resource URL, or null for directories in listed JARs
+         */
+        public URL getUrl() {
+            return url;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+    }
+}
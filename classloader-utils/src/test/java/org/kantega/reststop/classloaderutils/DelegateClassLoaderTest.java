@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.classloaderutils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.URL;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ */
+public class DelegateClassLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldOnlyAskTheDelegateHavingTheClass() throws Exception {
+        File sharedPackage = folder.newFolder(DelegateClassLoaderTest.class.getPackage().getName().split("\\."));
+        new File(sharedPackage, "other.txt").createNewFile();
+        URL testClasses = DelegateClassLoaderTest.class.getProtectionDomain().getCodeSource().getLocation();
+
+        CountingClassLoader without = new CountingClassLoader(folder.getRoot().toURI().toURL());
+        CountingClassLoader with = new CountingClassLoader(testClasses);
+        Set<PluginClassLoader> delegates = new LinkedHashSet<>();
+        delegates.add(without);
+        delegates.add(with);
+        DelegateClassLoader loader = new DelegateClassLoader(null, delegates);
+
+        Class<?> fixture = loader.loadClass(Fixture.class.getName());
+
+        assertThat(fixture.getClassLoader(), is((ClassLoader) with));
+        assertThat(without.loads, is(0));
+        assertThat(with.loads, is(1));
+
+        String missing = DelegateClassLoaderTest.class.getPackage().getName() + ".Missing";
+        for (int i = 0; i < 2; i++) {
+            try {
+                loader.loadClass(missing);
+                fail("Expected " + missing + " to be missing");
+            } catch (ClassNotFoundException e) {
+                // Expected
+            }
+        }
+        assertThat(without.loads, is(0));
+        assertThat(with.loads, is(1));
+        assertThat(loader.getNegativeLookupHits(), is(1L));
+        assertThat(loader.isParentUsed(with.getPluginInfo()), is(true));
+        assertThat(loader.isParentUsed(without.getPluginInfo()), is(false));
+    }
+
+    public static class Fixture {
+    }
+
+    private static class CountingClassLoader extends PluginClassLoader {
+        private volatile int loads;
+
+        CountingClassLoader(URL url) {
+            super(pluginInfo(url), new URL[]{url}, null);
+        }
+
+        private static PluginInfo pluginInfo(URL url) {
+            PluginInfo info = new PluginInfo();
+            info.setArtifactId(url.toString());
+            return info;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith("java.")) {
+                loads++;
+            }
+            return super.loadClass(name, resolve);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.classloaderutils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ */
+public class PluginClassLoaderTest {
+
+    @Test
+    public void shouldFindClassDefinedAfterMiss() throws Exception {
+        String name = Generated.class.getName();
+        GeneratingClassLoader loader = new GeneratingClassLoader();
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                loader.loadClass(name);
+                fail("Expected " + name + " to be missing");
+            } catch (ClassNotFoundException e) {
+                // Expected
+            }
+        }
+        assertThat(loader.getNegativeLookupHits(), is(1L));
+
+        Class<?> generated = loader.define(name);
+
+        assertThat(loader.loadClass(name), is((Object) generated));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedNames() {
+        NegativeLookupCache cache = new NegativeLookupCache(10);
+        for (int i = 0; i < 10; i++) {
+            cache.addMissing("name" + i);
+        }
+        assertThat(cache.isMissing("name0"), is(true));
+
+        cache.addMissing("name10");
+
+        assertThat(cache.isMissing("name0"), is(true));
+        assertThat(cache.isMissing("name1"), is(false));
+        assertThat(cache.isMissing("name2"), is(true));
+        assertThat(cache.isMissing("name10"), is(true));
+    }
+
+    public static class Generated {
+    }
+
+    private static class GeneratingClassLoader extends PluginClassLoader {
+        GeneratingClassLoader() {
+            super(new PluginInfo(), new URL[0], null);
+        }
+
+        Class<?> define(String name) throws IOException {
+            try (InputStream in = PluginClassLoaderTest.class.getResourceAsStream("/" + name.replace('.', '/') + ".class")) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    bytes.write(buffer, 0, read);
+                }
+                return defineClass(name, bytes.toByteArray(), 0, bytes.size());
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.classloaderutils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class PluginResourceIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldFindResourcesInBaselineOrder() throws IOException {
+        URLClassLoader root = new URLClassLoader(new URL[]{jar("root.jar", "assets/root.txt", "assets/shared.txt")}, null);
+        PluginClassLoader a = new PluginClassLoader(new PluginInfo(), new URL[]{jar("a.jar", "assets/a.txt", "assets/shared.txt", "assets/dir/x.txt")}, root);
+        PluginClassLoader b = new PluginClassLoader(new PluginInfo(),
+                new URL[]{jar("b.jar", "assets/a.txt", "assets/b.txt", "assets/dir/y.txt")},
+                new ResourceHidingClassLoader(new DelegateClassLoader(root, Collections.singleton(a)), Object.class));
+        List<PluginClassLoader> classLoaders = Arrays.asList(b, a);
+
+        PluginResourceIndex index = new PluginResourceIndex(classLoaders, "assets/");
+
+        for (String path : Arrays.asList("assets/root.txt", "assets/shared.txt", "assets/a.txt", "assets/b.txt",
+                "assets/dir/x.txt", "assets/dir/y.txt", "assets/missing.txt", "other/root.txt")) {
+            assertThat(path, url(index.find(path)), is(baseline(classLoaders, path)));
+        }
+        assertThat(index.find("assets/a.txt").getUrl().toString().contains("/a.jar!"), is(true));
+        assertThat(index.find("assets/dir").isDirectory(), is(true));
+        assertThat(index.find("assets/dir/").isDirectory(), is(true));
+        assertThat(index.find("assets/missing.txt"), nullValue());
+    }
+
+    private static URL url(PluginResourceIndex.Resource resource) {
+        return resource == null ? null : resource.getUrl();
+    }
+
+    /**
+     * What the index replaces: each class loader asked in turn.
+     */
+    private static URL baseline(List<PluginClassLoader> classLoaders, String path) {
+        for (PluginClassLoader classLoader : classLoaders) {
+            URL url = classLoader.getResource(path);
+            if (url != null) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    private URL jar(String name, String... entries) throws IOException {
+        File file = folder.newFile(name);
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file))) {
+            for (String entry : entries) {
+                out.putNextEntry(new ZipEntry(entry));
+                out.write(entry.getBytes("utf-8"));
+                out.closeEntry();
+            }
+        }
+        return file.toURI().toURL();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.core;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Immutable hash map with O(log n) updates, stored as a {@link PersistentTree} of hash buckets.
+ */
+final class PersistentHashMap<K, V> {
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(PersistentTree.empty());
+
+    // Each bucket holds alternating keys and values for keys sharing a hash code
+    private final PersistentTree<Object[]> buckets;
+
+    private PersistentHashMap(PersistentTree<Object[]> buckets) {
+        this.buckets = buckets;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        Object[] bucket = buckets.get(Objects.hashCode(key));
+        if (bucket != null) {
+            int i = indexOf(bucket, key);
+            if (i >= 0) {
+                return (V) bucket[i + 1];
+            }
+        }
+        return null;
+    }
+
+    boolean containsKey(Object key) {
+        Object[] bucket = buckets.get(Objects.hashCode(key));
+        return bucket != null && indexOf(bucket, key) >= 0;
+    }
+
+    PersistentHashMap<K, V> put(K key, V value) {
+        int hash = Objects.hashCode(key);
+        Object[] bucket = buckets.get(hash);
+
+        Object[] updated;
+        if (bucket == null) {
+            updated = new Object[]{key, value};
+        } else {
+            int i = indexOf(bucket, key);
+            if (i >= 0) {
+                updated = bucket.clone();
+                updated[i + 1] = value;
+            } else {
+                updated = Arrays.copyOf(bucket, bucket.length + 2);
+                updated[bucket.length] = key;
+                updated[bucket.length + 1] = value;
+            }
+        }
+        return new PersistentHashMap<>(buckets.put(hash, updated));
+    }
+
+    PersistentHashMap<K, V> remove(Object key) {
+        int hash = Objects.hashCode(key);
+        Object[] bucket = buckets.get(hash);
+        int i = bucket == null ? -1 : indexOf(bucket, key);
+        if (i < 0) {
+            return this;
+        }
+        if (bucket.length == 2) {
+            return new PersistentHashMap<>(buckets.remove(hash));
+        }
+        Object[] updated = new Object[bucket.length - 2];
+        System.arraycopy(bucket, 0, updated, 0, i);
+        System.arraycopy(bucket, i + 2, updated, i, bucket.length - i - 2);
+        return new PersistentHashMap<>(buckets.put(hash, updated));
+    }
+
+    private static int indexOf(Object[] bucket, Object key) {
+        for (int i = 0; i < bucket.length; i += 2) {
+            if (Objects.equals(bucket[i], key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
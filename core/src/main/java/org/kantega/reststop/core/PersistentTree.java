@@ -0,0 +1,226 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.core;
+
+import java.util.*;
+
+/**
+ * Immutable AVL tree keyed by long. Updates copy only the path to the changed node and share the rest
+ * of the tree with the previous version, so put and remove are O(log n).
+ */
+final class PersistentTree<V> {
+
+    private static final PersistentTree<?> EMPTY = new PersistentTree<>(null);
+
+    private final Node<V> root;
+
+    private PersistentTree(Node<V> root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PersistentTree<V> empty() {
+        return (PersistentTree<V>) EMPTY;
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    boolean isEmpty() {
+        return root == null;
+    }
+
+    V get(long key) {
+        Node<V> node = root;
+        while (node != null) {
+            if (key < node.key) {
+                node = node.left;
+            } else if (key > node.key) {
+                node = node.right;
+            } else {
+                return node.value;
+            }
+        }
+        return null;
+    }
+
+    V first() {
+        Node<V> node = root;
+        if (node == null) {
+            return null;
+        }
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node.value;
+    }
+
+    PersistentTree<V> put(long key, V value) {
+        return new PersistentTree<>(put(root, key, value));
+    }
+
+    PersistentTree<V> remove(long key) {
+        Node<V> removed = remove(root, key);
+        if (removed == root) {
+            return this;
+        }
+        return removed == null ? empty() : new PersistentTree<>(removed);
+    }
+
+    /**
+     * An unmodifiable view of the values, in key order.
+     */
+    Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new InOrderIterator<>(root);
+            }
+
+            @Override
+            public int size() {
+                return PersistentTree.this.size();
+            }
+        };
+    }
+
+    private static <V> Node<V> put(Node<V> node, long key, V value) {
+        if (node == null) {
+            return new Node<>(key, value, null, null);
+        }
+        if (key < node.key) {
+            return balance(node.key, node.value, put(node.left, key, value), node.right);
+        } else if (key > node.key) {
+            return balance(node.key, node.value, node.left, put(node.right, key, value));
+        } else {
+            return new Node<>(key, value, node.left, node.right);
+        }
+    }
+
+    private static <V> Node<V> remove(Node<V> node, long key) {
+        if (node == null) {
+            return null;
+        }
+        if (key < node.key) {
+            Node<V> left = remove(node.left, key);
+            return left == node.left ? node : balance(node.key, node.value, left, node.right);
+        } else if (key > node.key) {
+            Node<V> right = remove(node.right, key);
+            return right == node.right ? node : balance(node.key, node.value, node.left, right);
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        Node<V> successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.key, successor.value, node.left, removeFirst(node.right));
+    }
+
+    private static <V> Node<V> removeFirst(Node<V> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.key, node.value, removeFirst(node.left), node.right);
+    }
+
+    private static <V> Node<V> balance(long key, V value, Node<V> left, Node<V> right) {
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+
+        if (leftHeight > rightHeight + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node<>(left.key, left.value, left.left, new Node<>(key, value, left.right, right));
+            } else {
+                return new Node<>(left.right.key, left.right.value,
+                        new Node<>(left.key, left.value, left.left, left.right.left),
+                        new Node<>(key, value, left.right.right, right));
+            }
+        }
+        if (rightHeight > leftHeight + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node<>(right.key, right.value, new Node<>(key, value, left, right.left), right.right);
+            } else {
+                return new Node<>(right.left.key, right.left.value,
+                        new Node<>(key, value, left, right.left.left),
+                        new Node<>(right.key, right.value, right.left.right, right.right));
+            }
+        }
+        return new Node<>(key, value, left, right);
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static final class Node<V> {
+        private final long key;
+        private final V value;
+        private final Node<V> left;
+        private final Node<V> right;
+        private final int height;
+        private final int size;
+
+        private Node(long key, V value, Node<V> left, Node<V> right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = size(left) + size(right) + 1;
+        }
+    }
+
+    private static final class InOrderIterator<V> implements Iterator<V> {
+        private final Deque<Node<V>> stack = new ArrayDeque<>();
+
+        private InOrderIterator(Node<V> root) {
+            pushLeft(root);
+        }
+
+        private void pushLeft(Node<V> node) {
+            while (node != null) {
+                stack.push(node);
+                node = node.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public V next() {
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node<V> node = stack.pop();
+            pushLeft(node.right);
+            return node.value;
+        }
+    }
+}
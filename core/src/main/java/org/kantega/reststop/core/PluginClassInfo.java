@@ -75,6 +75,30 @@ public class PluginClassInfo {
         }
     }
 
+    /**
+     * Groups plugins, given in startup order, into layers where every plugin only imports types exported by plugins in earlier layers.
+     * Plugins within a layer are independent of each other and keep their relative startup order.
+     */
+    public static List<List<PluginClassInfo>> resolveStartupLayers(List<PluginClassInfo> startupOrder) {
+        Map<PluginClassInfo, Integer> layerOf = new HashMap<>();
+        List<List<PluginClassInfo>> layers = new ArrayList<>();
+
+        for (PluginClassInfo pluginClass : startupOrder) {
+            int layer = 0;
+            for (Map.Entry<PluginClassInfo, Integer> producer : layerOf.entrySet()) {
+                if(producer.getKey().getExports().stream().anyMatch(t -> pluginClass.getImports().contains(t))) {
+                    layer = Math.max(layer, producer.getValue() + 1);
+                }
+            }
+            layerOf.put(pluginClass, layer);
+            if(layer == layers.size()) {
+                layers.add(new ArrayList<>());
+            }
+            layers.get(layer).add(pluginClass);
+        }
+        return layers;
+    }
+
     private String getKey() {
         return getClassLoader().getPluginInfo().getPluginId() +":" + getPluginClass().getName();
     }
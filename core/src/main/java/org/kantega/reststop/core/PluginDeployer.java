@@ -20,6 +20,8 @@ import org.kantega.reststop.classloaderutils.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -29,17 +31,39 @@ import java.util.stream.Stream;
  */
 public class PluginDeployer {
 
+    /**
+     * Number of threads used to construct independent plugins concurrently. Plugins are started one by one when this is 1.
+     */
+    public static final String STARTUP_THREADS_PROPERTY = "reststop.startupThreads";
+
+    /**
+     * File caching plugin metadata between restarts. The cache is disabled unless this is set.
+     */
+    public static final String METADATA_CACHE_PROPERTY = "reststop.metadataCache";
+
     private final ReststopPluginLoader pluginLoader;
     private final ClassLoader parentClassLoader;
+    private final int startupThreads;
+    private final PluginMetadataCache metadataCache;
 
     public PluginDeployer(ClassLoader parentClassLoader, File configFile) {
         this.parentClassLoader = parentClassLoader;
         pluginLoader = new ReststopPluginLoader(configFile);
+        startupThreads = Math.max(1, Integer.getInteger(STARTUP_THREADS_PROPERTY, 1));
+        String metadataCacheFile = System.getProperty(METADATA_CACHE_PROPERTY, "");
+        metadataCache = metadataCacheFile.trim().isEmpty()
+                ? PluginMetadataCache.DISABLED
+                : PluginMetadataCache.open(new File(metadataCacheFile));
     }
 
     private PluginState deploy(List<PluginClassInfo> plugins,PluginState currentPluginState) {
 
         List<PluginClassInfo> startupOrder = PluginClassInfo.resolveStartupOrder(plugins);
+
+        if(startupThreads > 1 && startupOrder.size() > 1) {
+            return deployInLayers(startupOrder, currentPluginState);
+        }
+
         PluginState pluginState = currentPluginState;
 
         for (PluginClassInfo pluginClassInfo : startupOrder) {
@@ -48,6 +72,75 @@ public class PluginDeployer {
         return pluginState;
     }
 
+    /**
+     * Constructs the plugins of each dependency layer concurrently, waiting for a layer to complete before starting the next.
+     * If any plugin in a layer fails, the failure of the first failing plugin in startup order is thrown with the others suppressed.
+     * Each plugin is added with the sequence number it gets when deployed one after another, so services and exports are
+     * ordered the same either way.
+     */
+    private PluginState deployInLayers(List<PluginClassInfo> startupOrder, PluginState currentPluginState) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(startupThreads, startupOrder.size()), new StartupThreadFactory());
+        try {
+            PluginState pluginState = currentPluginState;
+
+            long firstSequence = currentPluginState.getNextSequence();
+            Map<PluginClassInfo, Long> sequences = new IdentityHashMap<>();
+            for (PluginClassInfo info : startupOrder) {
+                sequences.put(info, firstSequence + sequences.size());
+            }
+
+            for (List<PluginClassInfo> layer : PluginClassInfo.resolveStartupLayers(startupOrder)) {
+                PluginState layerState = pluginState;
+
+                List<Future<LoadedPluginClass>> constructions = layer.stream()
+                        .map(info -> executor.submit(() -> pluginLoader.loadPlugin(info, layerState)))
+                        .collect(Collectors.toList());
+
+                List<LoadedPluginClass> loaded = new ArrayList<>();
+                Throwable failure = null;
+                for (Future<LoadedPluginClass> construction : constructions) {
+                    try {
+                        loaded.add(construction.get());
+                    } catch (ExecutionException e) {
+                        if(failure == null) {
+                            failure = e.getCause();
+                        } else {
+                            failure.addSuppressed(e.getCause());
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while starting plugins", e);
+                    }
+                }
+                if(failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                } else if(failure instanceof Error) {
+                    throw (Error) failure;
+                } else if(failure != null) {
+                    throw new RuntimeException(failure);
+                }
+
+                for (int i = 0; i < layer.size(); i++) {
+                    pluginState = pluginState.addPlugin(loaded.get(i), sequences.get(layer.get(i)));
+                }
+            }
+            return pluginState;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class StartupThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "reststop-plugin-startup-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     public PluginState deploy(Collection<PluginInfo> plugins, ClassLoaderFactory classLoaderFactory, PluginState currentPluginState) {
 
         Map<String, PluginInfo> byId = plugins.stream().collect(Collectors.toMap(PluginInfo::getPluginId, Function.identity()));
@@ -73,8 +166,12 @@ public class PluginDeployer {
                 addRequest.stream()).collect(Collectors.toList());
 
 
-        List<PluginClassLoader> newClassLoaders = newClassLoaders(newClassLoaderPluginInfos, currentPluginState, classLoaderFactory);
-        List<PluginClassInfo> newPlugins = findPlugins(newClassLoaders);
+        PluginJarIndex jarIndex = PluginJarIndex.index(newClassLoaderPluginInfos, new StartupThreadFactory(), metadataCache);
+
+        Set<PluginClassLoader> indexedClassLoaders = new HashSet<>();
+        List<PluginClassLoader> newClassLoaders = newClassLoaders(newClassLoaderPluginInfos, currentPluginState, classLoaderFactory, jarIndex, indexedClassLoaders);
+        List<PluginClassInfo> newPlugins = findPlugins(newClassLoaders, jarIndex, indexedClassLoaders);
+        metadataCache.save();
 
         Set<Class> affectedTypes = getAffectedTypes(removedPlugins, newPlugins);
         affectedTypes.add(PluginClassLoader.class);
@@ -107,10 +204,18 @@ public class PluginDeployer {
         return pluginState;
     }
 
-    private List<PluginClassLoader> newClassLoaders(Collection<PluginInfo> pluginInfos, PluginState currentPluginState, ClassLoaderFactory classLoaderFactory) {
+    /**
+     * Creates class loaders in dependency order. Class loaders are cheap to create, what is expensive is searching them
+     * for service descriptors. Where the class loader's JARs were indexed up front, the index answers instead.
+     */
+    private List<PluginClassLoader> newClassLoaders(Collection<PluginInfo> pluginInfos, PluginState currentPluginState, ClassLoaderFactory classLoaderFactory,
+                                                    PluginJarIndex jarIndex, Set<PluginClassLoader> indexedClassLoaders) {
         Map<String, PluginClassLoader> current = currentPluginState.getClassLoaders().stream()
                 .collect(Collectors.toMap(p -> p.getPluginInfo().getGroupIdAndArtifactId(), p ->p));
 
+        boolean rootDescriptors = !jarIndex.isEmpty()
+                && (this.parentClassLoader.getResource(PluginJarIndex.PLUGINS_DESCRIPTOR) != null
+                || this.parentClassLoader.getResource(PluginJarIndex.CLASS_LOADER_FACTORY_DESCRIPTOR) != null);
 
         List<PluginClassLoader> result = new ArrayList<>();
 
@@ -120,6 +225,14 @@ public class PluginDeployer {
             PluginClassLoader newClassLoader = classLoaderFactory.createPluginClassLoader(info, parentClassLoader, allPlugins);
             current.put(newClassLoader.getPluginInfo().getGroupIdAndArtifactId(), newClassLoader);
             result.add(newClassLoader);
+
+            boolean parentHidesDescriptors = parentClassLoader != this.parentClassLoader || !rootDescriptors;
+            if(parentHidesDescriptors && jarIndex.covers(newClassLoader)) {
+                indexedClassLoaders.add(newClassLoader);
+                if(!jarIndex.isProvidingClassLoaderFactory(newClassLoader)) {
+                    continue;
+                }
+            }
             Iterator<ClassLoaderFactory> classLoaderFactories = ServiceLoader.load(ClassLoaderFactory.class, newClassLoader).iterator();
             if(classLoaderFactories.hasNext()) {
                 classLoaderFactory= classLoaderFactories.next();
@@ -202,29 +315,71 @@ public class PluginDeployer {
     }
 
 
-    private List<PluginClassInfo> findPlugins(Collection<PluginClassLoader> classLoaders) {
+    private List<PluginClassInfo> findPlugins(Collection<PluginClassLoader> classLoaders, PluginJarIndex jarIndex, Set<PluginClassLoader> indexedClassLoaders) {
 
         return classLoaders.stream()
-                .map(this::findPlugins)
+                .map(cl -> findPlugins(cl, indexedClassLoaders.contains(cl) ? jarIndex : null))
                 .flatMap(List::stream)
                 .collect(Collectors.toList());
 
     }
 
-    private List<PluginClassInfo> findPlugins(PluginClassLoader pluginClassLoader) {
-        return readLines(pluginClassLoader, "META-INF/services/ReststopPlugin/simple.txt").stream()
-                .map(className -> getPluginInfo(className, pluginClassLoader))
+    private List<PluginClassInfo> findPlugins(PluginClassLoader pluginClassLoader, PluginJarIndex index) {
+        Set<String> classNames = index != null
+                ? index.getPluginClassNames(pluginClassLoader)
+                : readLines(pluginClassLoader, PluginJarIndex.PLUGINS_DESCRIPTOR);
+
+        return classNames.stream()
+                .map(className -> getPluginInfo(className, pluginClassLoader, index != null))
                 .collect(Collectors.toList());
     }
 
-    private PluginClassInfo getPluginInfo(String className, PluginClassLoader classLoader) {
+    private PluginClassInfo getPluginInfo(String className, PluginClassLoader classLoader, boolean cacheable) {
         Class pluginClass = pluginLoader.loadPluginClass(classLoader, className);
-        return new PluginClassInfo(classLoader,
+
+        if(cacheable) {
+            PluginMetadataCache.PluginClassEntry cached = metadataCache.getPluginClass(classLoader.getURLs(), className);
+            if(cached != null) {
+                try {
+                    return new PluginClassInfo(classLoader,
+                            pluginClass,
+                            cached.propertyNames,
+                            cached.consumingAllProperties,
+                            loadClasses(pluginClass, cached.imports),
+                            loadClasses(pluginClass, cached.exports));
+                } catch (ClassNotFoundException e) {
+                    // Fall back to reflection
+                }
+            }
+        }
+
+        PluginClassInfo info = new PluginClassInfo(classLoader,
                 pluginClass,
                 pluginLoader.findConsumedPropertyNames(pluginClass),
                 pluginLoader.isConsumingAllProperties(pluginClass),
                 pluginLoader.findConsumedTypes(pluginClass),
                 pluginLoader.findExportedTypes(pluginClass));
+
+        if(cacheable) {
+            metadataCache.putPluginClass(classLoader.getURLs(), className, new PluginMetadataCache.PluginClassEntry(
+                    info.getPropertyNames(),
+                    info.isConsumingAllProperties(),
+                    classNames(info.getImports()),
+                    classNames(info.getExports())));
+        }
+        return info;
+    }
+
+    private static Set<Class> loadClasses(Class pluginClass, Set<String> classNames) throws ClassNotFoundException {
+        Set<Class> classes = new HashSet<>();
+        for (String className : classNames) {
+            classes.add(Class.forName(className, false, pluginClass.getClassLoader()));
+        }
+        return classes;
+    }
+
+    private static Set<String> classNames(Set<Class> classes) {
+        return classes.stream().map(Class::getName).collect(Collectors.toSet());
     }
 
     private Set<String> readLines(ClassLoader pluginClassLoader, String path) {
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.core;
+
+import org.kantega.reststop.api.PluginFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.*;
+
+/**
+ * A plugin class as described by the descriptor and factory the annotation processor generates for it.
+ */
+class PluginDescriptor {
+
+    static final String SUFFIX = ".plugin-descriptor";
+
+    private static final ClassValue<PluginDescriptor> DESCRIPTORS = new ClassValue<PluginDescriptor>() {
+        @Override
+        protected PluginDescriptor computeValue(Class<?> type) {
+            return read(type);
+        }
+    };
+
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<>();
+
+    static {
+        for (Class<?> type : Arrays.asList(byte.class, short.class, int.class, long.class, float.class, double.class, boolean.class, char.class)) {
+            PRIMITIVES.put(type.getName(), type);
+        }
+    }
+
+    enum Kind { SERVICE, SERVICES, EXPORTS, CONFIG, PROPERTIES }
+
+    static class Parameter {
+        final Kind kind;
+        final Class<?> type;
+        final String name;
+        final String defaultValue;
+        final boolean required;
+
+        private Parameter(Kind kind, Class<?> type, String name, String defaultValue, boolean required) {
+            this.kind = kind;
+            this.type = type;
+            this.name = name;
+            this.defaultValue = defaultValue;
+            this.required = required;
+        }
+    }
+
+    static class ExportField {
+        final Class<?> type;
+        final boolean collection;
+        final Field field;
+
+        private ExportField(Class<?> type, boolean collection, Field field) {
+            this.type = type;
+            this.collection = collection;
+            this.field = field;
+        }
+    }
+
+    private final PluginFactory<Object> factory;
+    private final List<Parameter> parameters;
+    private final List<ExportField> exports;
+    private final boolean hasPreDestroy;
+
+    private PluginDescriptor(PluginFactory<Object> factory, List<Parameter> parameters, List<ExportField> exports, boolean hasPreDestroy) {
+        this.factory = factory;
+        this.parameters = parameters;
+        this.exports = exports;
+        this.hasPreDestroy = hasPreDestroy;
+    }
+
+    /**
+     * @return the generated descriptor of the plugin class, or null if it was not compiled with one
+     */
+    static PluginDescriptor of(Class<?> pluginClass) {
+        return DESCRIPTORS.get(pluginClass);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PluginDescriptor read(Class<?> pluginClass) {
+        Properties props = new Properties();
+        try (InputStream in = pluginClass.getResourceAsStream(pluginClass.getSimpleName() + SUFFIX)) {
+            if (in == null) {
+                return null;
+            }
+            props.load(in);
+        } catch (IOException e) {
+            return null;
+        }
+
+        ClassLoader loader = pluginClass.getClassLoader();
+        try {
+            Class<?> factoryClass = Class.forName(props.getProperty("factory"), true, loader);
+            if (!PluginFactory.class.isAssignableFrom(factoryClass)) {
+                return null;
+            }
+
+            List<Parameter> parameters = new ArrayList<>();
+            int parameterCount = Integer.parseInt(props.getProperty("parameters"));
+            for (int i = 0; i < parameterCount; i++) {
+                String prefix = "parameter." + i + ".";
+                Kind kind = Kind.valueOf(props.getProperty(prefix + "kind").toUpperCase());
+                String type = props.getProperty(prefix + "type");
+                parameters.add(new Parameter(kind,
+                        type == null ? Properties.class : resolveType(type, loader),
+                        props.getProperty(prefix + "name"),
+                        props.getProperty(prefix + "defaultValue", ""),
+                        Boolean.parseBoolean(props.getProperty(prefix + "required"))));
+            }
+
+            List<ExportField> exports = new ArrayList<>();
+            int exportCount = Integer.parseInt(props.getProperty("exports"));
+            for (int i = 0; i < exportCount; i++) {
+                String prefix = "export." + i + ".";
+                Field field = null;
+                if (!Boolean.parseBoolean(props.getProperty(prefix + "accessible"))) {
+                    field = pluginClass.getDeclaredField(props.getProperty(prefix + "field"));
+                    field.setAccessible(true);
+                }
+                exports.add(new ExportField(resolveType(props.getProperty(prefix + "type"), loader),
+                        Boolean.parseBoolean(props.getProperty(prefix + "collection")),
+                        field));
+            }
+
+            return new PluginDescriptor((PluginFactory<Object>) factoryClass.newInstance(),
+                    Collections.unmodifiableList(parameters),
+                    Collections.unmodifiableList(exports),
+                    !props.getProperty("preDestroy", "").isEmpty());
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            // Out of date or partial descriptor, leave it to reflection
+            return null;
+        }
+    }
+
+    private static Class<?> resolveType(String name, ClassLoader loader) throws ClassNotFoundException {
+        Class<?> primitive = PRIMITIVES.get(name);
+        return primitive != null ? primitive : Class.forName(name, false, loader);
+    }
+
+    PluginFactory<Object> getFactory() {
+        return factory;
+    }
+
+    List<Parameter> getParameters() {
+        return parameters;
+    }
+
+    List<ExportField> getExports() {
+        return exports;
+    }
+
+    boolean hasPreDestroy() {
+        return hasPreDestroy;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.core;
+
+import org.kantega.reststop.classloaderutils.Artifact;
+import org.kantega.reststop.classloaderutils.PluginClassLoader;
+import org.kantega.reststop.classloaderutils.PluginInfo;
+
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+
+/**
+ * The service descriptors found in plugin JARs and their runtime class path, read directly from
+ * each JAR's central directory so class loaders don't have to be searched for them.
+ */
+class PluginJarIndex {
+
+    static final String PLUGINS_DESCRIPTOR = "META-INF/services/ReststopPlugin/simple.txt";
+    static final String PRIORITY_DESCRIPTOR = "META-INF/services/ReststopPlugin/priority.txt";
+    static final String CLASS_LOADER_FACTORY_DESCRIPTOR = "META-INF/services/" + ClassLoaderFactory.class.getName();
+
+    static final PluginJarIndex EMPTY = new PluginJarIndex(Collections.emptyMap());
+
+    private final Map<URI, JarDescriptors> jars;
+
+    private PluginJarIndex(Map<URI, JarDescriptors> jars) {
+        this.jars = jars;
+    }
+
+    /**
+     * Opens and indexes the JAR files of the given plugins concurrently, except those already in the cache.
+     * Class path entries which are not JAR files are left out.
+     */
+    static PluginJarIndex index(Collection<PluginInfo> pluginInfos, ThreadFactory threadFactory, PluginMetadataCache cache) {
+        Set<File> files = new LinkedHashSet<>();
+        for (PluginInfo info : pluginInfos) {
+            files.add(info.getFile());
+            for (Artifact artifact : info.getClassPath("runtime")) {
+                files.add(artifact.getFile());
+            }
+        }
+
+        Map<URI, JarDescriptors> jars = new HashMap<>();
+        List<File> unknown = new ArrayList<>();
+        for (File file : files) {
+            if(file != null && file.isFile()) {
+                JarDescriptors cached = cache.getJar(file);
+                if(cached != null) {
+                    jars.put(file.toURI(), cached);
+                } else {
+                    unknown.add(file);
+                }
+            }
+        }
+
+        if(!unknown.isEmpty()) {
+            int threads = Math.min(unknown.size(), Runtime.getRuntime().availableProcessors());
+            ExecutorService executor = Executors.newFixedThreadPool(threads, threadFactory);
+            try {
+                Map<File, Future<JarDescriptors>> indexing = new LinkedHashMap<>();
+                for (File file : unknown) {
+                    indexing.put(file, executor.submit(() -> readDescriptors(file)));
+                }
+
+                for (Map.Entry<File, Future<JarDescriptors>> entry : indexing.entrySet()) {
+                    try {
+                        JarDescriptors descriptors = entry.getValue().get();
+                        jars.put(entry.getKey().toURI(), descriptors);
+                        cache.putJar(entry.getKey(), descriptors);
+                    } catch (ExecutionException e) {
+                        // Left for the class loader to discover
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return EMPTY;
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        for (PluginInfo info : pluginInfos) {
+            JarDescriptors descriptors = info.getFile() == null ? null : jars.get(info.getFile().toURI());
+            if(descriptors != null) {
+                info.setPriority(descriptors.priority);
+            }
+        }
+
+        return jars.isEmpty() ? EMPTY : new PluginJarIndex(jars);
+    }
+
+    private static JarDescriptors readDescriptors(File file) throws IOException {
+        try (JarFile jar = new JarFile(file)) {
+            ZipEntry pluginsEntry = jar.getEntry(PLUGINS_DESCRIPTOR);
+            Set<String> classNames = pluginsEntry == null
+                    ? null
+                    : readLines(jar.getInputStream(pluginsEntry));
+
+            ZipEntry priorityEntry = jar.getEntry(PRIORITY_DESCRIPTOR);
+            Set<String> priority = priorityEntry == null
+                    ? Collections.emptySet()
+                    : new TreeSet<>(readLines(jar.getInputStream(priorityEntry)));
+
+            return new JarDescriptors(classNames,
+                    jar.getEntry(CLASS_LOADER_FACTORY_DESCRIPTOR) != null,
+                    priority.isEmpty() ? 0 : Integer.parseInt(priority.iterator().next()));
+        }
+    }
+
+    private static Set<String> readLines(InputStream stream) throws IOException {
+        try(BufferedReader br = new BufferedReader(new InputStreamReader(stream, "utf-8"))) {
+            return br.lines().collect(Collectors.toSet());
+        }
+    }
+
+    boolean isEmpty() {
+        return jars.isEmpty();
+    }
+
+    /**
+     * Whether every URL of the class loader was indexed, so that the index can answer for its own resources.
+     */
+    boolean covers(PluginClassLoader classLoader) {
+        URL[] urls = classLoader.getURLs();
+        if(urls.length == 0) {
+            return false;
+        }
+        for (URL url : urls) {
+            if(lookup(url) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The plugin class names in the first simple.txt on the class loader's own URLs, same as getResource would find.
+     */
+    Set<String> getPluginClassNames(PluginClassLoader classLoader) {
+        for (URL url : classLoader.getURLs()) {
+            Set<String> classNames = lookup(url).pluginClassNames;
+            if(classNames != null) {
+                return classNames;
+            }
+        }
+        return Collections.emptySet();
+    }
+
+    boolean isProvidingClassLoaderFactory(PluginClassLoader classLoader) {
+        for (URL url : classLoader.getURLs()) {
+            if(lookup(url).providingClassLoaderFactory) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private JarDescriptors lookup(URL url) {
+        try {
+            return jars.get(url.toURI());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    static class JarDescriptors {
+        final Set<String> pluginClassNames;
+        final boolean providingClassLoaderFactory;
+        final int priority;
+
+        JarDescriptors(Set<String> pluginClassNames, boolean providingClassLoaderFactory, int priority) {
+            this.pluginClassNames = pluginClassNames;
+            this.providingClassLoaderFactory = providingClassLoaderFactory;
+            this.priority = priority;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.core;
+
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * On-disk cache of what startup otherwise derives by opening plugin JARs and reflecting over plugin classes.
+ * JAR entries are keyed by path and checked against the file's size and modification time. Plugin class entries are
+ * keyed by SHA-256 digests of every JAR on the class loader, so any change to the class path invalidates them. Digests
+ * are stored with the size and modification time they were computed for, and a JAR is only read again when these change.
+ * A cache file which other users can write to is ignored.
+ */
+class PluginMetadataCache {
+
+    private static final int VERSION = 3;
+
+    static final PluginMetadataCache DISABLED = new PluginMetadataCache(null);
+
+    private final File file;
+    private final Map<String, JarEntry> jars = new ConcurrentHashMap<>();
+    private final Map<String, PluginClassEntry> pluginClasses = new ConcurrentHashMap<>();
+    private final Set<String> usedJars = ConcurrentHashMap.newKeySet();
+    private final Set<String> usedPluginClasses = ConcurrentHashMap.newKeySet();
+    private final Map<String, FileDigest> digests = new ConcurrentHashMap<>();
+    private final Set<String> usedDigests = ConcurrentHashMap.newKeySet();
+    private volatile boolean dirty;
+
+    private PluginMetadataCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the cache file if it exists. A missing, unreadable, outdated or untrusted file gives an empty cache.
+     */
+    static PluginMetadataCache open(File file) {
+        PluginMetadataCache cache = new PluginMetadataCache(file);
+        if (file.isFile() && isTrusted(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() == VERSION) {
+                    cache.read(in);
+                }
+            } catch (IOException e) {
+                cache.jars.clear();
+                cache.digests.clear();
+                cache.pluginClasses.clear();
+            }
+        }
+        return cache;
+    }
+
+    private void read(DataInputStream in) throws IOException {
+        int jarCount = in.readInt();
+        for (int i = 0; i < jarCount; i++) {
+            String path = in.readUTF();
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            Set<String> pluginClassNames = in.readBoolean() ? readSet(in) : null;
+            boolean providingClassLoaderFactory = in.readBoolean();
+            int priority = in.readInt();
+            jars.put(path, new JarEntry(size, lastModified,
+                    new PluginJarIndex.JarDescriptors(pluginClassNames, providingClassLoaderFactory, priority)));
+        }
+        int digestCount = in.readInt();
+        for (int i = 0; i < digestCount; i++) {
+            String path = in.readUTF();
+            digests.put(path, new FileDigest(in.readLong(), in.readLong(), in.readUTF()));
+        }
+        int pluginClassCount = in.readInt();
+        for (int i = 0; i < pluginClassCount; i++) {
+            String key = in.readUTF();
+            Set<String> propertyNames = readSet(in);
+            boolean consumingAllProperties = in.readBoolean();
+            Set<String> imports = readSet(in);
+            Set<String> exports = readSet(in);
+            pluginClasses.put(key, new PluginClassEntry(propertyNames, consumingAllProperties, imports, exports));
+        }
+    }
+
+    PluginJarIndex.JarDescriptors getJar(File jar) {
+        if (file == null) {
+            return null;
+        }
+        String path = jar.getAbsolutePath();
+        JarEntry entry = jars.get(path);
+        if (entry != null && entry.size == jar.length() && entry.lastModified == jar.lastModified()) {
+            usedJars.add(path);
+            return entry.descriptors;
+        }
+        return null;
+    }
+
+    void putJar(File jar, PluginJarIndex.JarDescriptors descriptors) {
+        if (file == null) {
+            return;
+        }
+        String path = jar.getAbsolutePath();
+        jars.put(path, new JarEntry(jar.length(), jar.lastModified(), descriptors));
+        usedJars.add(path);
+        dirty = true;
+    }
+
+    /**
+     * @param classPath the class loader's URLs, all of them JAR files
+     */
+    PluginClassEntry getPluginClass(URL[] classPath, String className) {
+        if (file == null) {
+            return null;
+        }
+        String key = pluginClassKey(classPath, className);
+        PluginClassEntry entry = key == null ? null : pluginClasses.get(key);
+        if (entry != null) {
+            usedPluginClasses.add(key);
+        }
+        return entry;
+    }
+
+    void putPluginClass(URL[] classPath, String className, PluginClassEntry entry) {
+        if (file == null) {
+            return;
+        }
+        String key = pluginClassKey(classPath, className);
+        if (key != null) {
+            pluginClasses.put(key, entry);
+            usedPluginClasses.add(key);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Writes entries used by this process back to disk if anything was added. Failing to write the cache is not an error,
+     * it is only slower to start next time.
+     */
+    synchronized void save() {
+        if (file == null || !dirty) {
+            return;
+        }
+        dirty = false;
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            dir.mkdirs();
+            File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                    write(out);
+                }
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                tmp.delete();
+            }
+        } catch (IOException e) {
+            // Started without a cache next time
+        }
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+        out.writeInt(VERSION);
+
+        Map<String, JarEntry> jars = new HashMap<>(this.jars);
+        jars.keySet().retainAll(usedJars);
+        out.writeInt(jars.size());
+        for (Map.Entry<String, JarEntry> entry : jars.entrySet()) {
+            PluginJarIndex.JarDescriptors descriptors = entry.getValue().descriptors;
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().size);
+            out.writeLong(entry.getValue().lastModified);
+            out.writeBoolean(descriptors.pluginClassNames != null);
+            if (descriptors.pluginClassNames != null) {
+                writeSet(out, descriptors.pluginClassNames);
+            }
+            out.writeBoolean(descriptors.providingClassLoaderFactory);
+            out.writeInt(descriptors.priority);
+        }
+
+        Map<String, FileDigest> digests = new HashMap<>(this.digests);
+        digests.keySet().retainAll(usedDigests);
+        out.writeInt(digests.size());
+        for (Map.Entry<String, FileDigest> entry : digests.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().size);
+            out.writeLong(entry.getValue().lastModified);
+            out.writeUTF(entry.getValue().digest);
+        }
+
+        Map<String, PluginClassEntry> pluginClasses = new HashMap<>(this.pluginClasses);
+        pluginClasses.keySet().retainAll(usedPluginClasses);
+        out.writeInt(pluginClasses.size());
+        for (Map.Entry<String, PluginClassEntry> entry : pluginClasses.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeSet(out, entry.getValue().propertyNames);
+            out.writeBoolean(entry.getValue().consumingAllProperties);
+            writeSet(out, entry.getValue().imports);
+            writeSet(out, entry.getValue().exports);
+        }
+    }
+
+    private static Set<String> readSet(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Set<String> set = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            set.add(in.readUTF());
+        }
+        return set;
+    }
+
+    private static void writeSet(DataOutputStream out, Set<String> set) throws IOException {
+        out.writeInt(set.size());
+        for (String value : set) {
+            out.writeUTF(value);
+        }
+    }
+
+    private String pluginClassKey(URL[] classPath, String className) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (URL url : classPath) {
+                File jar = new File(new URI(url.toString()));
+                String jarDigest = digest(jar);
+                if (jarDigest == null) {
+                    return null;
+                }
+                digest.update((jar.getAbsolutePath() + ":" + jarDigest + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            return className + "@" + hex(digest.digest());
+        } catch (NoSuchAlgorithmException | URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The SHA-256 digest of the file's content, read again only when its size or modification time has changed.
+     */
+    private String digest(File jar) {
+        String path = jar.getAbsolutePath();
+        long size = jar.length();
+        long lastModified = jar.lastModified();
+        FileDigest digest = digests.get(path);
+        if (digest == null || digest.size != size || digest.lastModified != lastModified) {
+            try (InputStream in = new FileInputStream(jar)) {
+                MessageDigest md = MessageDigest.getInstance("SHA-256");
+                byte[] buffer = new byte[65536];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    md.update(buffer, 0, read);
+                }
+                digest = new FileDigest(size, lastModified, hex(md.digest()));
+            } catch (IOException | NoSuchAlgorithmException e) {
+                return null;
+            }
+            digests.put(path, digest);
+            dirty = true;
+        }
+        usedDigests.add(path);
+        return digest.digest;
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Whether the file is owned by the user running this process and not writable by anyone else.
+     * File systems without POSIX permissions are left to their own access control.
+     */
+    private static boolean isTrusted(File file) {
+        try {
+            Path path = file.toPath();
+            if (!Files.getOwner(path).getName().equals(System.getProperty("user.name"))) {
+                return false;
+            }
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path);
+            return !permissions.contains(PosixFilePermission.GROUP_WRITE)
+                    && !permissions.contains(PosixFilePermission.OTHERS_WRITE);
+        } catch (UnsupportedOperationException e) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static class JarEntry {
+        private final long size;
+        private final long lastModified;
+        private final PluginJarIndex.JarDescriptors descriptors;
+
+        private JarEntry(long size, long lastModified, PluginJarIndex.JarDescriptors descriptors) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.descriptors = descriptors;
+        }
+    }
+
+    private static class FileDigest {
+        private final long size;
+        private final long lastModified;
+        private final String digest;
+
+        private FileDigest(long size, long lastModified, String digest) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+    }
+
+    /**
+     * What {@link PluginDeployer} finds by reflection on a plugin class, with types by name.
+     */
+    static class PluginClassEntry {
+        final Set<String> propertyNames;
+        final boolean consumingAllProperties;
+        final Set<String> imports;
+        final Set<String> exports;
+
+        PluginClassEntry(Set<String> propertyNames, boolean consumingAllProperties, Set<String> imports, Set<String> exports) {
+            this.propertyNames = propertyNames;
+            this.consumingAllProperties = consumingAllProperties;
+            this.imports = imports;
+            this.exports = exports;
+        }
+    }
+}
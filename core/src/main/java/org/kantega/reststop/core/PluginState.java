@@ -21,78 +21,157 @@ import org.kantega.reststop.classloaderutils.PluginClassLoader;
 import org.kantega.reststop.classloaderutils.PluginInfo;
 
 import java.util.*;
-import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  *
  */
 public class PluginState {
 
+    // Exports and services are keyed by the plugin's sequence number in the upper bits and the export index in the lower bits
+    private static final int EXPORT_INDEX_BITS = 24;
+    private static final long STATIC_SERVICES_SEQUENCE = 0;
+
     // Real state
-    private final List<LoadedPluginClass> plugins;
-    private final List<PluginClassLoader> classLoaders;
+    private final PersistentTree<LoadedPluginClass> plugins;
+    private final ClassLoaders classLoaders;
     private final Map<Class, Object> staticServices;
+    private final long nextSequence;
 
     // Computed for lookup
-    private final Map<String, PluginInfo> pluginInfosById;
-    private final Map<Object, ClassLoader> byClassLoader;
-    private final Map<Class, List<PluginExport>> exports;
-    private final Map<Class, List<Object>> services;
-    private final List<Object> allPlugins;
+    private final PersistentHashMap<LoadedPluginClass, Long> sequences;
+    private final PersistentHashMap<Object, ClassLoader> byClassLoader;
+    private final PersistentHashMap<Class, PersistentTree<PluginExport>> exports;
+    private final PersistentHashMap<Class, PersistentTree<Object>> services;
+    private final Collection<Object> allPlugins;
 
     public PluginState(Map<Class, Object> services) {
         this(Collections.emptyList(), Collections.emptyList(), services);
     }
 
     public PluginState(List<LoadedPluginClass> plugins, List<PluginClassLoader> classLoaders, Map<Class, Object> staticServices) {
+        this(addPlugins(new PluginState(PersistentTree.empty(), ClassLoaders.EMPTY.addAll(classLoaders), staticServices, STATIC_SERVICES_SEQUENCE + 1,
+                PersistentHashMap.empty(), PersistentHashMap.empty(), PersistentHashMap.empty(), indexStaticServices(staticServices)), plugins));
+    }
+
+    private PluginState(PluginState state) {
+        this(state.plugins, state.classLoaders, state.staticServices, state.nextSequence,
+                state.sequences, state.byClassLoader, state.exports, state.services);
+    }
+
+    private PluginState(PersistentTree<LoadedPluginClass> plugins, ClassLoaders classLoaders, Map<Class, Object> staticServices, long nextSequence,
+                        PersistentHashMap<LoadedPluginClass, Long> sequences, PersistentHashMap<Object, ClassLoader> byClassLoader,
+                        PersistentHashMap<Class, PersistentTree<PluginExport>> exports, PersistentHashMap<Class, PersistentTree<Object>> services) {
         this.plugins = plugins;
         this.classLoaders = classLoaders;
         this.staticServices = staticServices;
+        this.nextSequence = nextSequence;
+        this.sequences = sequences;
+        this.byClassLoader = byClassLoader;
+        this.exports = exports;
+        this.services = services;
+
+        Collection<LoadedPluginClass> loaded = plugins.values();
+        this.allPlugins = new AbstractCollection<Object>() {
+            @Override
+            public Iterator<Object> iterator() {
+                Iterator<LoadedPluginClass> iterator = loaded.iterator();
+                return new Iterator<Object>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Object next() {
+                        return iterator.next().getPlugin();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return loaded.size();
+            }
+        };
+    }
 
-        this.byClassLoader = Collections.unmodifiableMap(plugins.stream()
-                .collect(Collectors.toMap(LoadedPluginClass::getPlugin, p -> p.getPluginClassInfo().getClassLoader())));
-
-        Map<Class, List<PluginExport>> exports = plugins.stream()
-                .map(LoadedPluginClass::getExports)
-                .flatMap(Collection::stream)
-                .collect(Collectors.groupingBy(PluginExport::getType));
-
-        this.exports = Collections.unmodifiableMap(exports);
+    private static PluginState addPlugins(PluginState state, List<LoadedPluginClass> plugins) {
+        for (LoadedPluginClass plugin : plugins) {
+            state = state.addPlugin(plugin);
+        }
+        return state;
+    }
 
-        Map<Class, List<Object>> services = new HashMap<>();
+    private static PersistentHashMap<Class, PersistentTree<Object>> indexStaticServices(Map<Class, Object> staticServices) {
+        PersistentHashMap<Class, PersistentTree<Object>> services = PersistentHashMap.empty();
+        for (Map.Entry<Class, Object> service : staticServices.entrySet()) {
+            services = services.put(service.getKey(), PersistentTree.empty().put(STATIC_SERVICES_SEQUENCE, service.getValue()));
+        }
+        return services;
+    }
 
-        staticServices.forEach( (type, o) -> services.computeIfAbsent(type, t -> new ArrayList<>()).add(o));
+    public PluginState addPlugin(LoadedPluginClass loadedPluginClass) {
+        return addPlugin(loadedPluginClass, nextSequence);
+    }
 
-        this.exports.values().stream()
-                .flatMap(List::stream)
-                .forEach(e -> services.computeIfAbsent(e.getType(), t -> new ArrayList<>()).add(e.getExport()));
+    /**
+     * Adds the plugin with a sequence number handed out in advance, so plugins added out of startup order are ordered
+     * as if they had been added in it.
+     */
+    PluginState addPlugin(LoadedPluginClass loadedPluginClass, long sequence) {
+        PersistentHashMap<Class, PersistentTree<PluginExport>> exports = this.exports;
+        PersistentHashMap<Class, PersistentTree<Object>> services = this.services;
+
+        long key = sequence << EXPORT_INDEX_BITS;
+        for (PluginExport export : loadedPluginClass.getExports()) {
+            exports = exports.put(export.getType(), treeFor(exports, export.getType()).put(key, export));
+            services = services.put(export.getType(), treeFor(services, export.getType()).put(key, export.getExport()));
+            key++;
+        }
 
-        this.services = Collections.unmodifiableMap(services);
+        PluginClassLoader classLoader = loadedPluginClass.getPluginClassInfo().getClassLoader();
 
-        this.allPlugins = Collections.unmodifiableList(plugins.stream()
-                .map(LoadedPluginClass::getPlugin)
-                .collect(Collectors.toList()));
+        return new PluginState(plugins.put(sequence, loadedPluginClass), classLoaders.add(classLoader), staticServices, Math.max(nextSequence, sequence + 1),
+                sequences.put(loadedPluginClass, sequence),
+                byClassLoader.put(loadedPluginClass.getPlugin(), classLoader),
+                exports, services);
+    }
 
-        pluginInfosById = classLoaders.stream()
-                .map(PluginClassLoader::getPluginInfo)
-                .collect(Collectors.toMap(PluginInfo::getPluginId, Function.identity()));
+    long getNextSequence() {
+        return nextSequence;
     }
 
+    public PluginState removePlugin(LoadedPluginClass plugin) {
+        Long sequence = sequences.get(plugin);
+        if(sequence == null) {
+            return this;
+        }
 
+        PersistentHashMap<Class, PersistentTree<PluginExport>> exports = this.exports;
+        PersistentHashMap<Class, PersistentTree<Object>> services = this.services;
 
-    public PluginState addPlugin(LoadedPluginClass loadedPluginClass) {
-        List<LoadedPluginClass> plugins = Stream.concat(this.plugins.stream(), Stream.of(loadedPluginClass)).collect(Collectors.toList());
-        List<PluginClassLoader> classLoaders = Stream.concat(
-                 this.classLoaders.stream(), Stream.of(loadedPluginClass.getPluginClassInfo().getClassLoader()))
-                .distinct().collect(Collectors.toList());
+        long key = sequence << EXPORT_INDEX_BITS;
+        for (PluginExport export : plugin.getExports()) {
+            exports = removeFrom(exports, export.getType(), key);
+            services = removeFrom(services, export.getType(), key);
+            key++;
+        }
 
-        return new PluginState(plugins, classLoaders, staticServices);
+        return new PluginState(plugins.remove(sequence), classLoaders, staticServices, nextSequence,
+                sequences.remove(plugin),
+                byClassLoader.remove(plugin.getPlugin()),
+                exports, services);
     }
 
-    public PluginState removePlugin(LoadedPluginClass plugin) {
-        return new PluginState(plugins.stream().filter(p -> p != plugin).collect(Collectors.toList()), classLoaders, staticServices);
+    private static <V> PersistentTree<V> treeFor(PersistentHashMap<Class, PersistentTree<V>> map, Class type) {
+        PersistentTree<V> tree = map.get(type);
+        return tree == null ? PersistentTree.empty() : tree;
+    }
+
+    private static <V> PersistentHashMap<Class, PersistentTree<V>> removeFrom(PersistentHashMap<Class, PersistentTree<V>> map, Class type, long key) {
+        PersistentTree<V> tree = treeFor(map, type).remove(key);
+        return tree.isEmpty() ? map.remove(type) : map.put(type, tree);
     }
 
     public Collection<Object> getPlugins() {
@@ -111,22 +190,22 @@ public class PluginState {
     }
 
     public Collection<PluginClassLoader> getClassLoaders() {
-        return classLoaders;
+        return classLoaders.values;
     }
 
     public Map<String, PluginInfo> getPluginInfosById() {
-        return pluginInfosById;
+        return classLoaders.infosById;
     }
 
 
     public <T> Collection<T> findExports(Class<T> type) {
-        Collection<T> exports = (Collection<T>) this.exports.get(type);
-        return exports == null ? Collections.emptyList() : exports;
+        PersistentTree<PluginExport> exports = this.exports.get(type);
+        return exports == null ? Collections.emptyList() : (Collection<T>) exports.values();
     }
 
     public <T> Collection<T> getServices(Class<T> type) {
-        Collection<T> services = (Collection<T>) this.services.get(type);
-        return services == null ? Collections.emptyList() : services;
+        PersistentTree<Object> services = this.services.get(type);
+        return services == null ? Collections.emptyList() : (Collection<T>) services.values();
     }
 
     public boolean hasService(Class<?> type) {
@@ -134,21 +213,21 @@ public class PluginState {
     }
 
     public <T> T getService(Class<T> type) {
-        List<Object> objects = services.get(type);
-        return objects == null || objects.isEmpty() ? null : (T) objects.get(0);
+        PersistentTree<Object> objects = services.get(type);
+        return objects == null ? null : (T) objects.first();
     }
 
     public List<LoadedPluginClass> getPluginsLoadedBy(Collection<PluginClassLoader> classLoaders) {
         Set<Integer> hashCodes = classLoaders.stream()
                 .map(System::identityHashCode)
                 .collect(Collectors.toSet());
-        return this.plugins.stream()
+        return this.plugins.values().stream()
                 .filter(p -> hashCodes.contains(System.identityHashCode(p.getPluginClassInfo().getClassLoader())))
                 .collect(Collectors.toList());
     }
 
     public List<LoadedPluginClass> findConsumers(Set<Class> exportedTypes) {
-        List<LoadedPluginClass> directConsumers = plugins.stream()
+        List<LoadedPluginClass> directConsumers = plugins.values().stream()
                 .filter(p -> p.getPluginClassInfo().getImports().stream().anyMatch(exportedTypes::contains))
                 .collect(Collectors.toList());
 
@@ -167,7 +246,7 @@ public class PluginState {
     }
 
     private void findTransitiveConsumers(LoadedPluginClass producer, Map<LoadedPluginClass, LoadedPluginClass> transitiveConsumers) {
-        plugins.stream()
+        plugins.values().stream()
                 .filter(p -> isConsumer(p, producer))
                 .forEach(p -> findTransitiveConsumers(p, transitiveConsumers));
         transitiveConsumers.put(producer, producer);
@@ -190,7 +269,7 @@ public class PluginState {
     }
 
     private void getTransitiveClosure(PluginClassLoader classLoader, Map<PluginClassLoader, PluginClassLoader> transitiveConsumers) {
-        List<PluginClassLoader> dependants = classLoaders.stream()
+        List<PluginClassLoader> dependants = classLoaders.values.stream()
                 .filter(cl -> cl.getPluginInfo().getDependsOn().stream().anyMatch(a -> a.getPluginId().equals(classLoader.getPluginInfo().getPluginId())))
                 .collect(Collectors.toList());
 
@@ -200,18 +279,23 @@ public class PluginState {
     }
 
     public PluginState addPluginClassLoaders(List<PluginClassLoader> classLoaders) {
-        List<PluginClassLoader> newClassLoaders = Stream.concat(this.classLoaders.stream(), classLoaders.stream()).distinct().collect(Collectors.toList());
-        return new PluginState(plugins, newClassLoaders, staticServices);
+        return withClassLoaders(this.classLoaders.addAll(classLoaders));
     }
 
     public PluginState removeClassLoaders(Collection<PluginClassLoader> remove) {
-        List<PluginClassLoader> classLoaders = new ArrayList<>(this.classLoaders);
-        classLoaders.removeAll(remove);
-        return new PluginState(plugins, classLoaders, staticServices);
+        ClassLoaders classLoaders = this.classLoaders;
+        for (PluginClassLoader classLoader : remove) {
+            classLoaders = classLoaders.remove(classLoader);
+        }
+        return withClassLoaders(classLoaders);
+    }
+
+    private PluginState withClassLoaders(ClassLoaders classLoaders) {
+        return new PluginState(plugins, classLoaders, staticServices, nextSequence, sequences, byClassLoader, exports, services);
     }
 
     public List<LoadedPluginClass> findConfiguredWith(Set<String> changedProps) {
-        return this.plugins.stream()
+        return this.plugins.values().stream()
                 .filter(p -> isConfiguredWith(changedProps, p))
                 .collect(Collectors.toList());
     }
@@ -224,4 +308,93 @@ public class PluginState {
         }
         return false;
     }
-}
\ No newline at end of file
+
+    /**
+     * The plugin class loaders in the order they were added, and their plugin infos by plugin id.
+     */
+    private static final class ClassLoaders {
+
+        private static final ClassLoaders EMPTY = new ClassLoaders(PersistentTree.empty(), PersistentHashMap.empty(), PersistentHashMap.empty(), 0);
+
+        private final PersistentTree<PluginClassLoader> bySequence;
+        private final PersistentHashMap<PluginClassLoader, Long> sequences;
+        private final PersistentHashMap<String, PluginInfo> infos;
+        private final long nextSequence;
+
+        private final Collection<PluginClassLoader> values;
+        private final Map<String, PluginInfo> infosById;
+
+        private ClassLoaders(PersistentTree<PluginClassLoader> bySequence, PersistentHashMap<PluginClassLoader, Long> sequences,
+                             PersistentHashMap<String, PluginInfo> infos, long nextSequence) {
+            this.bySequence = bySequence;
+            this.sequences = sequences;
+            this.infos = infos;
+            this.nextSequence = nextSequence;
+            this.values = bySequence.values();
+            this.infosById = new AbstractMap<String, PluginInfo>() {
+                @Override
+                public boolean containsKey(Object key) {
+                    return infos.containsKey(key);
+                }
+
+                @Override
+                public PluginInfo get(Object key) {
+                    return infos.get(key);
+                }
+
+                @Override
+                public Set<Entry<String, PluginInfo>> entrySet() {
+                    return new AbstractSet<Entry<String, PluginInfo>>() {
+                        @Override
+                        public Iterator<Entry<String, PluginInfo>> iterator() {
+                            Iterator<PluginClassLoader> classLoaders = values.iterator();
+                            return new Iterator<Entry<String, PluginInfo>>() {
+                                @Override
+                                public boolean hasNext() {
+                                    return classLoaders.hasNext();
+                                }
+
+                                @Override
+                                public Entry<String, PluginInfo> next() {
+                                    PluginInfo info = classLoaders.next().getPluginInfo();
+                                    return new SimpleImmutableEntry<>(info.getPluginId(), info);
+                                }
+                            };
+                        }
+
+                        @Override
+                        public int size() {
+                            return values.size();
+                        }
+                    };
+                }
+            };
+        }
+
+        ClassLoaders add(PluginClassLoader classLoader) {
+            if (sequences.containsKey(classLoader)) {
+                return this;
+            }
+            return new ClassLoaders(bySequence.put(nextSequence, classLoader), sequences.put(classLoader, nextSequence),
+                    infos.put(classLoader.getPluginInfo().getPluginId(), classLoader.getPluginInfo()), nextSequence + 1);
+        }
+
+        ClassLoaders addAll(Collection<PluginClassLoader> classLoaders) {
+            ClassLoaders added = this;
+            for (PluginClassLoader classLoader : classLoaders) {
+                added = added.add(classLoader);
+            }
+            return added;
+        }
+
+        ClassLoaders remove(PluginClassLoader classLoader) {
+            Long sequence = sequences.get(classLoader);
+            if (sequence == null) {
+                return this;
+            }
+            String pluginId = classLoader.getPluginInfo().getPluginId();
+            return new ClassLoaders(bySequence.remove(sequence), sequences.remove(classLoader),
+                    infos.get(pluginId) == classLoader.getPluginInfo() ? infos.remove(pluginId) : infos, nextSequence);
+        }
+    }
+}
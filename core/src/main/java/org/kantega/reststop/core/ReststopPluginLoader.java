@@ -49,6 +49,11 @@ public class ReststopPluginLoader {
 
         Class clazz = pluginClassInfo.getPluginClass();
 
+        PluginDescriptor descriptor = PluginDescriptor.of(clazz);
+        if(descriptor != null) {
+            return loadGeneratedPlugin(descriptor, pluginClassInfo, pluginState);
+        }
+
         List<Method> preDestroyMethods = findPredestroyMethods(clazz);
 
         Properties config = readConfig(pluginClassInfo.getClassLoader().getPluginInfo());
@@ -76,6 +81,30 @@ public class ReststopPluginLoader {
         return new LoadedPluginClass(plugin, exports, pluginClassInfo, preDestroyMethods);
     }
 
+    private LoadedPluginClass loadGeneratedPlugin(PluginDescriptor descriptor, PluginClassInfo pluginClassInfo, PluginState pluginState) {
+        Class clazz = pluginClassInfo.getPluginClass();
+
+        Properties config = readConfig(pluginClassInfo.getClassLoader().getPluginInfo());
+
+        List<PluginDescriptor.Parameter> parameters = descriptor.getParameters();
+        Object[] params = new Object[parameters.size()];
+        for (int i = 0; i < params.length; i++) {
+            params[i] = findInjectableService(clazz, parameters.get(i), pluginState, config);
+        }
+
+        Object plugin = withClassloaderContext(pluginClassInfo.getClassLoader(), () -> {
+            try {
+                return descriptor.getFactory().create(params);
+            } catch (Exception e) {
+                throw new InvalidPluginException("Plugin class " + clazz.getName() + " threw an exeception during construction ", e, clazz);
+            }
+        });
+
+        Collection<PluginExport> exports = findExports(descriptor, plugin, pluginClassInfo.getClassLoader());
+
+        return new LoadedPluginClass(plugin, exports, pluginClassInfo, Collections.emptyList());
+    }
+
     private Properties readConfig(PluginInfo pluginInfo) {
 
         File artifact = new File(configFile.getParentFile(), pluginInfo.getArtifactId() +".conf");
@@ -107,6 +136,16 @@ public class ReststopPluginLoader {
     }
 
     public Set<Class> findConsumedTypes(Class clazz) {
+        PluginDescriptor descriptor = PluginDescriptor.of(clazz);
+        if(descriptor != null) {
+            Set<Class> consumedTypes = new HashSet<>();
+            for (PluginDescriptor.Parameter parameter : descriptor.getParameters()) {
+                if(parameter.kind != PluginDescriptor.Kind.CONFIG && parameter.kind != PluginDescriptor.Kind.PROPERTIES) {
+                    consumedTypes.add(parameter.type);
+                }
+            }
+            return consumedTypes;
+        }
         Constructor constructor = clazz.getConstructors()[0];
 
         Set<Class> consumedType = new HashSet<>();
@@ -124,6 +163,16 @@ public class ReststopPluginLoader {
     }
 
     public Set<String> findConsumedPropertyNames(Class clazz) {
+        PluginDescriptor descriptor = PluginDescriptor.of(clazz);
+        if(descriptor != null) {
+            Set<String> propertyNames = new HashSet<>();
+            for (PluginDescriptor.Parameter parameter : descriptor.getParameters()) {
+                if(parameter.kind == PluginDescriptor.Kind.CONFIG) {
+                    propertyNames.add(parameter.name);
+                }
+            }
+            return propertyNames;
+        }
         String[] parameterNames = readParameterNames(clazz);
         Constructor constructor = clazz.getConstructors()[0];
 
@@ -149,6 +198,10 @@ public class ReststopPluginLoader {
     }
 
     public boolean isConsumingAllProperties(Class clazz) {
+        PluginDescriptor descriptor = PluginDescriptor.of(clazz);
+        if(descriptor != null) {
+            return descriptor.getParameters().stream().anyMatch(p -> p.kind == PluginDescriptor.Kind.PROPERTIES);
+        }
         Constructor constructor = clazz.getConstructors()[0];
 
         for (int i = 0; i < constructor.getParameterTypes().length; i++) {
@@ -199,6 +252,14 @@ public class ReststopPluginLoader {
 
         Set<Class> types = new HashSet<>();
 
+        PluginDescriptor descriptor = PluginDescriptor.of(clazz);
+        if(descriptor != null) {
+            for (PluginDescriptor.ExportField export : descriptor.getExports()) {
+                types.add(export.type);
+            }
+            return types;
+        }
+
         for (Field field : clazz.getDeclaredFields()) {
             if (field.getAnnotation(Export.class) != null) {
                 Class<?> type = field.getType();
@@ -249,7 +310,34 @@ public class ReststopPluginLoader {
 
         return exports;
     }
+    private Collection<PluginExport> findExports(PluginDescriptor descriptor, Object plugin, ClassLoader classLoader) {
+        List<PluginExport> exports = new ArrayList<>();
+
+        List<PluginDescriptor.ExportField> fields = descriptor.getExports();
+        for (int i = 0; i < fields.size(); i++) {
+            PluginDescriptor.ExportField export = fields.get(i);
+            Object service;
+            try {
+                service = export.field != null ? export.field.get(plugin) : descriptor.getFactory().getExport(plugin, i);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+            if (service != null) {
+                if (export.collection) {
+                    ((Collection<?>) service).forEach((s) -> exports.add(new Exreg(classLoader, plugin, export.type, s)));
+                } else {
+                    exports.add(new Exreg(classLoader, plugin, export.type, service));
+                }
+            }
+        }
+        return exports;
+    }
+
     public void unloadPlugin(LoadedPluginClass loadedPlugin) {
+        PluginDescriptor descriptor = PluginDescriptor.of(loadedPlugin.getPlugin().getClass());
+        if(descriptor != null && descriptor.hasPreDestroy()) {
+            descriptor.getFactory().preDestroy(loadedPlugin.getPlugin());
+        }
         for (Method method : loadedPlugin.getPreDestroyMethods()) {
             try {
                 method.invoke(loadedPlugin.getPlugin());
@@ -315,6 +403,30 @@ public class ReststopPluginLoader {
         }
     }
 
+    private static Object findInjectableService(Class pluginClass, PluginDescriptor.Parameter parameter, PluginState pluginState, Properties config) {
+        switch (parameter.kind) {
+            case CONFIG:
+                return getConfigProperty(pluginClass, parameter.type, parameter.name, parameter.defaultValue, parameter.required, config);
+            case PROPERTIES:
+                Properties clone = new Properties();
+                clone.putAll(config);
+                return clone;
+            case EXPORTS:
+                return pluginState.findExports(parameter.type);
+            case SERVICES:
+                if(parameter.type == PluginClassLoader.class) {
+                    return pluginState.getClassLoaders();
+                } else {
+                    return pluginState.getServices(parameter.type);
+                }
+            default:
+                if (!pluginState.hasService(parameter.type)) {
+                    throw new InvalidPluginException("Plugin  class " + pluginClass + " has an illegal constructor. Parameter of type " + parameter.type.getName() + " could not be resolved to an application service", pluginClass);
+                }
+                return pluginState.getService(parameter.type);
+        }
+    }
+
     private static Object findInjectableService(Constructor constructor, int i, PluginState pluginState, String parameterName, Properties config) {
         Class<?> paramClass = constructor.getParameterTypes()[i];
 
@@ -360,19 +472,25 @@ public class ReststopPluginLoader {
         if( name == null || name.trim().isEmpty())  {
             name = parameterName;
         }
-        String defaultValue = config.defaultValue().isEmpty() ? null : config.defaultValue();
+        return getConfigProperty(param.getDeclaringExecutable().getDeclaringClass(), param.getType(), name, config.defaultValue(), config.required(), properties);
+    }
+
+    private static Object getConfigProperty(Class pluginClass, Class<?> type, String name, String defaultValue, boolean required, Properties properties) {
+        if(defaultValue.isEmpty()) {
+            defaultValue = null;
+        }
 
         String value = properties.getProperty(name, defaultValue);
 
-        if( (value == null || value.trim().isEmpty()) && config.required()) {
-            throw new IllegalArgumentException("Configuration missing for required @Config parameter '" +name +"' in class " + param.getDeclaringExecutable().getDeclaringClass().getName());
+        if( (value == null || value.trim().isEmpty()) && required) {
+            throw new IllegalArgumentException("Configuration missing for required @Config parameter '" +name +"' in class " + pluginClass.getName());
         }
 
         if (value != null) {
             value = interpolate(properties.getProperty(name, defaultValue));
         }
 
-        return convertValue(param, value, param.getType());
+        return convertValue(pluginClass, name, value, type);
 
 
     }
@@ -401,7 +519,7 @@ public class ReststopPluginLoader {
         return value;
     }
 
-    private static Object convertValue(Parameter parameter, String value, Class<?> type) {
+    private static Object convertValue(Class pluginClass, String name, String value, Class<?> type) {
         if(type == String.class) {
             return value;
         } else if(type == byte.class || type == Byte.class) {
@@ -421,7 +539,7 @@ public class ReststopPluginLoader {
         } else if(type == char.class || type == Character.class) {
             return value.charAt(0);
         }
-        throw new IllegalArgumentException("Could not convert @Config for unknown type " + parameter.getType().getName() + " of parameter '" +parameter.getName() +"' in class " + parameter.getDeclaringExecutable().getDeclaringClass().getName());
+        throw new IllegalArgumentException("Could not convert @Config for unknown type " + type.getName() + " of parameter '" + name +"' in class " + pluginClass.getName());
     }
 
 
@@ -42,6 +42,8 @@ public class DefaultBootstrap implements Bootstrap{
     public void bootstrap(File globalConfigurationFile, Document pluginsXml, File repositoryDirectory, ClassLoader parentClassLoader) {
         List<PluginInfo> parsed = PluginInfo.parse(pluginsXml);
 
+        resolveFiles(parsed, repositoryDirectory);
+
         manager = new DefaultReststopPluginManager(parentClassLoader, globalConfigurationFile);
 
         ClassLoaderFactory classLoaderFactory = new DefaultClassLoaderFactory(repositoryDirectory);
@@ -50,6 +52,15 @@ public class DefaultBootstrap implements Bootstrap{
 
     }
 
+    private void resolveFiles(List<PluginInfo> plugins, File repositoryDirectory) {
+        for (PluginInfo info : plugins) {
+            info.setFile(getPluginFile(info, repositoryDirectory));
+            for (Artifact artifact : info.getClassPath("runtime")) {
+                artifact.setFile(getPluginFile(artifact, repositoryDirectory));
+            }
+        }
+    }
+
     private void deployPlugins(List<PluginInfo> plugins, ClassLoaderFactory classLoaderFactory) {
         manager.deploy(plugins, classLoaderFactory);
     }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.core;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class PersistentHashMapTest {
+
+    @Test
+    public void shouldPutGetAndRemove() {
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().put("a", 1).put("b", 2);
+
+        assertThat(map.get("a"), is(1));
+        assertThat(map.containsKey("b"), is(true));
+        assertThat(map.put("a", 3).get("a"), is(3));
+
+        map = map.remove("a");
+        assertThat(map.containsKey("a"), is(false));
+        assertThat(map.get("b"), is(2));
+    }
+
+    @Test
+    public void shouldKeepKeysWithCollidingHashCodes() {
+        assertThat("Aa".hashCode(), is("BB".hashCode()));
+
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty()
+                .put("Aa", 1).put("BB", 2).put("C#", 3);
+
+        assertThat(map.get("Aa"), is(1));
+        assertThat(map.get("BB"), is(2));
+
+        PersistentHashMap<String, Integer> removed = map.remove("Aa");
+        assertThat(removed.get("Aa"), nullValue());
+        assertThat(removed.get("BB"), is(2));
+        assertThat(removed.put("BB", 4).get("BB"), is(4));
+        assertThat(removed.remove("BB").containsKey("BB"), is(false));
+    }
+
+    @Test
+    public void shouldSupportNullKey() {
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().put(null, 1);
+
+        assertThat(map.get(null), is(1));
+        assertThat(map.remove(null).containsKey(null), is(false));
+    }
+
+    @Test
+    public void shouldReturnSameMapWhenRemovingMissingKey() {
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().put("a", 1);
+
+        assertThat(map.remove("b"), sameInstance(map));
+        assertThat(map.remove("BB").remove("Aa"), sameInstance(map));
+    }
+
+    @Test
+    public void shouldMatchHashMapForRandomUpdates() {
+        Random random = new Random(7);
+        Map<Integer, Integer> expected = new HashMap<>();
+        PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+
+        for (int i = 0; i < 5000; i++) {
+            int key = random.nextInt(300);
+            if (random.nextBoolean()) {
+                expected.put(key, i);
+                map = map.put(key, i);
+            } else {
+                expected.remove(key);
+                map = map.remove(key);
+            }
+        }
+
+        for (int key = 0; key < 300; key++) {
+            assertThat(map.containsKey(key), is(expected.containsKey(key)));
+            assertThat(map.get(key), is(expected.get(key)));
+        }
+    }
+
+    @Test
+    public void shouldLeaveOlderVersionsUnchanged() {
+        PersistentHashMap<String, Integer> original = PersistentHashMap.<String, Integer>empty()
+                .put("Aa", 1).put("BB", 2).put("c", 3);
+
+        PersistentHashMap<String, Integer> updated = original.put("Aa", 10).remove("BB").remove("c").put("d", 4);
+
+        assertThat(original.get("Aa"), is(1));
+        assertThat(original.get("BB"), is(2));
+        assertThat(original.get("c"), is(3));
+        assertThat(original.containsKey("d"), is(false));
+        assertThat(updated.get("Aa"), is(10));
+        assertThat(updated.containsKey("BB"), is(false));
+        assertThat(updated.get("d"), is(4));
+    }
+}
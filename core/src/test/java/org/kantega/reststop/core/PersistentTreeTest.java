@@ -0,0 +1,167 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.core;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.*;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class PersistentTreeTest {
+
+    @Test
+    public void shouldGetPutValues() {
+        PersistentTree<String> tree = PersistentTree.<String>empty().put(2, "two").put(1, "one").put(3, "three");
+
+        assertThat(tree.size(), is(3));
+        assertThat(tree.get(1), is("one"));
+        assertThat(tree.get(3), is("three"));
+        assertThat(tree.get(4), nullValue());
+        assertThat(tree.first(), is("one"));
+        assertThat(new ArrayList<>(tree.values()), is(Arrays.asList("one", "two", "three")));
+    }
+
+    @Test
+    public void shouldReplaceValueForExistingKey() {
+        PersistentTree<String> tree = PersistentTree.<String>empty().put(1, "one").put(1, "uno");
+
+        assertThat(tree.size(), is(1));
+        assertThat(tree.get(1), is("uno"));
+    }
+
+    @Test
+    public void shouldRemoveLeafInnerAndRootNodes() {
+        PersistentTree<Long> tree = PersistentTree.empty();
+        for (long i = 1; i <= 7; i++) {
+            tree = tree.put(i, i);
+        }
+
+        tree = tree.remove(7).remove(2).remove(4);
+
+        assertThat(new ArrayList<>(tree.values()), is(Arrays.asList(1L, 3L, 5L, 6L)));
+        assertBalanced(tree);
+        assertThat(tree.remove(1).remove(3).remove(5).remove(6).isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldReturnSameTreeWhenRemovingMissingKey() {
+        PersistentTree<String> tree = PersistentTree.<String>empty().put(1, "one");
+
+        assertThat(tree.remove(2), sameInstance(tree));
+    }
+
+    @Test
+    public void shouldStayBalancedForSequentialKeys() {
+        PersistentTree<Long> tree = PersistentTree.empty();
+        for (long i = 0; i < 1024; i++) {
+            tree = tree.put(i << 24, i);
+            if (i % 64 == 0) {
+                assertBalanced(tree);
+            }
+        }
+
+        assertThat(height(tree), is(11));
+
+        for (long i = 0; i < 1024; i += 2) {
+            tree = tree.remove(i << 24);
+        }
+        assertBalanced(tree);
+        assertThat(tree.size(), is(512));
+        assertThat(tree.first(), is(1L));
+    }
+
+    @Test
+    public void shouldMatchSortedMapForRandomUpdates() {
+        Random random = new Random(42);
+        TreeMap<Long, Long> expected = new TreeMap<>();
+        PersistentTree<Long> tree = PersistentTree.empty();
+
+        for (int i = 0; i < 5000; i++) {
+            long key = random.nextInt(500);
+            if (random.nextBoolean()) {
+                expected.put(key, key);
+                tree = tree.put(key, key);
+            } else {
+                expected.remove(key);
+                tree = tree.remove(key);
+            }
+        }
+
+        assertBalanced(tree);
+        assertThat(tree.size(), is(expected.size()));
+        assertThat(new ArrayList<>(tree.values()), is(new ArrayList<>(expected.values())));
+    }
+
+    @Test
+    public void shouldLeaveOlderVersionsUnchanged() {
+        PersistentTree<Long> original = PersistentTree.empty();
+        for (long i = 0; i < 100; i++) {
+            original = original.put(i, i);
+        }
+        List<Long> before = new ArrayList<>(original.values());
+
+        PersistentTree<Long> updated = original.put(100, 100L).put(5, -5L).remove(50).remove(0);
+
+        assertThat(new ArrayList<>(original.values()), is(before));
+        assertThat(original.get(5), is(5L));
+        assertThat(original.get(50), is(50L));
+        assertThat(original.get(100), nullValue());
+        assertThat(updated.get(5), is(-5L));
+        assertThat(updated.get(50), nullValue());
+        assertThat(updated.size(), is(99));
+    }
+
+    private static void assertBalanced(PersistentTree<?> tree) {
+        check(field(tree, "root"), Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    private static int height(PersistentTree<?> tree) {
+        return check(field(tree, "root"), Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    private static int check(Object node, long min, long max) {
+        if (node == null) {
+            return 0;
+        }
+        long key = (Long) field(node, "key");
+        assertTrue("key " + key + " out of order", key >= min && key <= max);
+        int left = check(field(node, "left"), min, key - 1);
+        int right = check(field(node, "right"), key + 1, max);
+        assertTrue("unbalanced at " + key, Math.abs(left - right) <= 1);
+        assertThat(field(node, "height"), is((Object) (Math.max(left, right) + 1)));
+        return Math.max(left, right) + 1;
+    }
+
+    private static Object field(Object target, String name) {
+        try {
+            Field field = target.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            return field.get(target);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class PluginMetadataCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldValidateJarsBySizeAndModificationTime() throws IOException {
+        File jar = jar("plugin.jar", "one");
+        File cacheFile = new File(folder.getRoot(), "metadata.cache");
+
+        PluginMetadataCache cache = PluginMetadataCache.open(cacheFile);
+        assertThat(cache.getJar(jar), nullValue());
+        cache.putJar(jar, new PluginJarIndex.JarDescriptors(Collections.singleton("com.example.Plugin"), false, 0));
+        cache.save();
+
+        PluginJarIndex.JarDescriptors descriptors = PluginMetadataCache.open(cacheFile).getJar(jar);
+        assertThat(descriptors.pluginClassNames, is(Collections.singleton("com.example.Plugin")));
+
+        jar.setLastModified(jar.lastModified() + 2000);
+        assertThat(PluginMetadataCache.open(cacheFile).getJar(jar), nullValue());
+    }
+
+    @Test
+    public void shouldKeepDigestsUntilSizeOrModificationTimeChanges() throws IOException {
+        File jar = jar("dependency.jar", "one");
+        URL[] classPath = {jar.toURI().toURL()};
+        File cacheFile = new File(folder.getRoot(), "metadata.cache");
+        PluginMetadataCache.PluginClassEntry entry = new PluginMetadataCache.PluginClassEntry(
+                Collections.emptySet(), false, Collections.emptySet(), Collections.emptySet());
+
+        PluginMetadataCache cache = PluginMetadataCache.open(cacheFile);
+        cache.putPluginClass(classPath, "com.example.Plugin", entry);
+        cache.save();
+
+        // Same size and time: the stored digest is trusted without reading the JAR
+        long lastModified = jar.lastModified();
+        Files.write(jar.toPath(), "two".getBytes(StandardCharsets.UTF_8));
+        jar.setLastModified(lastModified);
+        assertThat(PluginMetadataCache.open(cacheFile).getPluginClass(classPath, "com.example.Plugin"), notNullValue());
+
+        jar.setLastModified(lastModified + 2000);
+        assertThat(PluginMetadataCache.open(cacheFile).getPluginClass(classPath, "com.example.Plugin"), nullValue());
+    }
+
+    private File jar(String name, String content) throws IOException {
+        File jar = folder.newFile(name);
+        Files.write(jar.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return jar;
+    }
+}
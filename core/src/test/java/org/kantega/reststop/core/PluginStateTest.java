@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.core;
+
+import org.junit.Test;
+import org.kantega.reststop.api.PluginExport;
+import org.kantega.reststop.classloaderutils.PluginClassLoader;
+import org.kantega.reststop.classloaderutils.PluginInfo;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class PluginStateTest {
+
+    private final PluginClassLoader classLoader = new PluginClassLoader(new PluginInfo(), new URL[0], getClass().getClassLoader());
+
+    @Test
+    public void shouldOrderPluginsAddedOutOfOrderBySequence() {
+        LoadedPluginClass a = plugin("a");
+        LoadedPluginClass b = plugin("b");
+        LoadedPluginClass c = plugin("c");
+        PluginState empty = new PluginState(Collections.emptyMap());
+        long first = empty.getNextSequence();
+
+        PluginState serial = empty.addPlugin(a).addPlugin(b).addPlugin(c);
+        PluginState layered = empty.addPlugin(c, first + 2).addPlugin(a, first).addPlugin(b, first + 1);
+
+        assertThat(layered.getService(String.class), is("a"));
+        assertThat(new ArrayList<>(layered.getServices(String.class)), is(new ArrayList<>(serial.getServices(String.class))));
+        assertThat(new ArrayList<>(layered.getPlugins()), is(new ArrayList<>(serial.getPlugins())));
+        assertThat(layered.getNextSequence(), is(serial.getNextSequence()));
+    }
+
+    @Test
+    public void shouldKeepEarlierStatesWhenAddingAndRemoving() {
+        LoadedPluginClass a = plugin("a");
+        LoadedPluginClass b = plugin("b");
+        PluginState withA = new PluginState(Collections.emptyMap()).addPlugin(a);
+
+        PluginState withB = withA.addPlugin(b).removePlugin(a);
+
+        assertThat(new ArrayList<>(withA.getServices(String.class)), is(asList("a")));
+        assertThat(new ArrayList<>(withB.getServices(String.class)), is(asList("b")));
+        assertThat(withB.getClassLoader(b.getPlugin()), is((ClassLoader) classLoader));
+    }
+
+    @Test
+    public void shouldTrackClassLoadersAndPluginInfos() {
+        PluginClassLoader first = classLoader("first");
+        PluginClassLoader second = classLoader("second");
+        PluginClassLoader replacement = classLoader("first");
+
+        PluginState state = new PluginState(Collections.emptyMap()).addPluginClassLoaders(asList(first, second, first));
+        assertThat(new ArrayList<>(state.getClassLoaders()), is(asList(first, second)));
+        assertThat(state.getPluginInfosById().containsKey("com.example:first:1.0"), is(true));
+
+        PluginState replaced = state.removeClassLoaders(Collections.singleton(first)).addPluginClassLoaders(asList(replacement));
+
+        assertThat(new ArrayList<>(replaced.getClassLoaders()), is(asList(second, replacement)));
+        assertThat(replaced.getPluginInfosById().get("com.example:first:1.0"), is(replacement.getPluginInfo()));
+        assertThat(new ArrayList<>(replaced.getPluginInfosById().values()), is(asList(second.getPluginInfo(), replacement.getPluginInfo())));
+        assertThat(new ArrayList<>(state.getClassLoaders()), is(asList(first, second)));
+        assertThat(state.getPluginInfosById().get("com.example:first:1.0"), is(first.getPluginInfo()));
+        assertThat(state.removeClassLoaders(asList(first, second)).getPluginInfosById().isEmpty(), is(true));
+    }
+
+    private static PluginClassLoader classLoader(String artifactId) {
+        PluginInfo info = new PluginInfo();
+        info.setGroupId("com.example");
+        info.setArtifactId(artifactId);
+        info.setVersion("1.0");
+        return new PluginClassLoader(info, new URL[0], PluginStateTest.class.getClassLoader());
+    }
+
+    private LoadedPluginClass plugin(String exported) {
+        Object plugin = new Object();
+        List<PluginExport> exports = Collections.singletonList(new PluginExport<String>() {
+            @Override
+            public Class<String> getType() {
+                return String.class;
+            }
+
+            @Override
+            public String getExport() {
+                return exported;
+            }
+
+            @Override
+            public ClassLoader getClassLoader() {
+                return classLoader;
+            }
+
+            @Override
+            public Object getPlugin() {
+                return plugin;
+            }
+        });
+        PluginClassInfo info = new PluginClassInfo(classLoader, Object.class, Collections.emptySet(), false,
+                Collections.emptySet(), Collections.singleton(String.class));
+        return new LoadedPluginClass(plugin, exports, info, Collections.emptyList());
+    }
+}
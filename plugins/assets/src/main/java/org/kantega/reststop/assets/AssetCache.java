@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.assets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Assets held in memory with their compressed variants, evicting the least recently used when over the size limit.
+ * Recency is tracked with a tick per asset rather than by reordering a shared list, so hits don't lock. An asset
+ * missing from the cache is read once, with concurrent requests for it waiting for that read.
+ */
+class AssetCache {
+
+    interface Loader {
+        CachedAsset load() throws IOException;
+    }
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+
+    private final Map<String, Entry> assets = new ConcurrentHashMap<>();
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();
+
+    AssetCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxBytes / 8;
+    }
+
+    /**
+     * The cached asset, waiting for it if it is being read.
+     *
+     * @return the asset, or null if it isn't cached or reading it failed
+     */
+    CachedAsset get(String path) {
+        Entry entry = assets.get(path);
+        if (entry == null) {
+            return null;
+        }
+        entry.tick = clock.incrementAndGet();
+        return await(entry);
+    }
+
+    /**
+     * Whether an asset with the given content length is small enough to be cached. A length of -1 is unknown.
+     */
+    boolean accepts(long contentLength) {
+        return contentLength >= 0 && contentLength <= maxEntryBytes;
+    }
+
+    /**
+     * The cached asset, loading and caching it unless another request already is, in which case its result is used.
+     */
+    CachedAsset load(String path, Loader loader) throws IOException {
+        Entry created = new Entry(clock.incrementAndGet());
+        Entry existing = assets.putIfAbsent(path, created);
+        if (existing != null) {
+            CachedAsset asset = await(existing);
+            return asset != null ? asset : loader.load();
+        }
+
+        CachedAsset asset;
+        try {
+            asset = loader.load();
+        } catch (IOException | RuntimeException | Error e) {
+            assets.remove(path, created);
+            created.future.completeExceptionally(e);
+            throw e;
+        }
+        if (asset.getSize() > maxEntryBytes) {
+            assets.remove(path, created);
+            created.future.complete(asset);
+            return asset;
+        }
+        created.size = asset.getSize();
+        created.future.complete(asset);
+        if (size.addAndGet(created.size) > maxBytes) {
+            evict();
+        }
+        return asset;
+    }
+
+    private static CachedAsset await(Entry entry) {
+        try {
+            return entry.future.join();
+        } catch (CompletionException | CancellationException e) {
+            return null;
+        }
+    }
+
+    private synchronized void evict() {
+        long target = maxBytes - maxBytes / 10;
+        if (size.get() <= target) {
+            return;
+        }
+        List<Map.Entry<String, Entry>> eldest = new ArrayList<>(assets.entrySet());
+        eldest.sort(Comparator.comparingLong(e -> e.getValue().tick));
+        for (Map.Entry<String, Entry> entry : eldest) {
+            if (size.get() <= target) {
+                break;
+            }
+            // Assets still being read can't be evicted yet
+            if (entry.getValue().future.isDone() && assets.remove(entry.getKey(), entry.getValue())) {
+                size.addAndGet(-entry.getValue().size);
+            }
+        }
+    }
+
+    static CachedAsset read(InputStream in, String mimeType, long lastModified) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024 * 4];
+        int n;
+        while (-1 != (n = in.read(buffer))) {
+            out.write(buffer, 0, n);
+        }
+        byte[] content = out.toByteArray();
+
+        String etag = etag(content);
+        return new CachedAsset(mimeType, lastModified,
+                new CachedAsset.Variant(content, null, "\"" + etag + "\""),
+                compressed(content, "gzip", "\"" + etag + "-gz\""),
+                compressed(content, "deflate", "\"" + etag + "-df\""));
+    }
+
+    private static CachedAsset.Variant compressed(byte[] content, String encoding, String etag) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2);
+        try (DeflaterOutputStream compressor = "gzip".equals(encoding)
+                ? new GZIPOutputStream(out)
+                : new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION))) {
+            compressor.write(content);
+        }
+        // Only worth sending when clearly smaller
+        if (out.size() > content.length * 9L / 10) {
+            return null;
+        }
+        return new CachedAsset.Variant(out.toByteArray(), encoding, etag);
+    }
+
+    private static String etag(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 22);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<CachedAsset> future = new CompletableFuture<>();
+        private volatile long tick;
+        private volatile long size;
+
+        private Entry(long tick) {
+            this.tick = tick;
+        }
+    }
+}
@@ -17,17 +17,15 @@
 package org.kantega.reststop.assets;
 
 import org.kantega.reststop.classloaderutils.PluginClassLoader;
+import org.kantega.reststop.classloaderutils.PluginResourceIndex;
+import org.kantega.reststop.servlet.api.StaticContent;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.util.Collection;
 
 /**
@@ -35,14 +33,24 @@ import java.util.Collection;
  */
 public class AssetFilter implements Filter {
 
-    private final Collection<PluginClassLoader> pluginClassLoaders;
+    private final PluginResourceIndex resources;
     private final String classpathPrefix;
     private final String filterMapping;
+    private final AssetCache cache;
+    private final FileContent files = new FileContent();
 
     public AssetFilter(Collection<PluginClassLoader> pluginClassLoaders, String classpathPrefix, String filterMapping) {
-        this.pluginClassLoaders = pluginClassLoaders;
+        this(pluginClassLoaders, classpathPrefix, filterMapping, 0);
+    }
+
+    /**
+     * @param cacheSize bytes of asset content to keep in memory, or 0 to always read assets from their class loader
+     */
+    public AssetFilter(Collection<PluginClassLoader> pluginClassLoaders, String classpathPrefix, String filterMapping, long cacheSize) {
+        this.resources = new PluginResourceIndex(pluginClassLoaders, classpathPrefix);
         this.classpathPrefix = classpathPrefix;
         this.filterMapping = filterMapping;
+        this.cache = cacheSize > 0 ? new AssetCache(cacheSize) : null;
     }
 
     @Override
@@ -60,94 +68,71 @@ public class AssetFilter implements Filter {
 
         final String path = classpathPrefix +contextRelative.substring(filterMapping.length());
 
-        for(PluginClassLoader loader : pluginClassLoaders) {
-
-
-
-            URL resource = loader.getResource(path);
-
+        CachedAsset cached = cache == null ? null : cache.get(path);
+        if(cached != null) {
+            send(cached, req, resp);
+            return;
+        }
 
-            if(resource != null && !path.endsWith("/") && isDirectoryResource(resource, loader, path)) {
+        URL resource;
+        if(path.endsWith("/")) {
+            PluginResourceIndex.Resource indexPage = resources.find(path + "index.html");
+            resource = indexPage == null || indexPage.isDirectory() ? null : indexPage.getUrl();
+        } else {
+            PluginResourceIndex.Resource found = resources.find(path);
+            if(found != null && found.isDirectory()) {
                 resp.sendRedirect(req.getRequestURI() +"/");
                 return;
-
-            }
-            if(path.endsWith("/")) {
-                resource = loader.getResource(path +"index.html");
             }
+            resource = found == null ? null : found.getUrl();
+        }
 
-            if(resource != null) {
-
-                String mimeType = req.getServletContext().getMimeType(path.substring(path.lastIndexOf("/") + 1));
-                if(mimeType != null) {
-                    resp.setContentType(mimeType);
-                }
-
-                URLConnection urlConnection = resource.openConnection();
-
-                if(isUnmodified(urlConnection, req, resp)) {
-                    return;
-                } else {
+        if(resource != null) {
 
-                    long contentLength = urlConnection.getContentLengthLong();
+            String mimeType = req.getServletContext().getMimeType(path.substring(path.lastIndexOf("/") + 1));
+            if(mimeType != null) {
+                resp.setContentType(mimeType);
+            }
 
-                    if (contentLength != -1) {
-                        resp.setContentLengthLong(contentLength);
-                    }
+            StaticContent.Body body = files.of(resource);
 
-                    try (InputStream in = urlConnection.getInputStream()) {
-                        copy(in, servletResponse.getOutputStream());
+            // Files may be edited in place during development, JAR entries can only change with a redeploy
+            if(cache != null && "jar".equals(resource.getProtocol()) && cache.accepts(body.getLength())) {
+                cached = cache.load(path, () -> {
+                    try (InputStream in = resource.openStream()) {
+                        return AssetCache.read(in, mimeType, body.getLastModified());
                     }
-                    return;
-                }
+                });
+                send(cached, req, resp);
+                return;
             }
+
+            StaticContent.send(req, resp, body);
+            return;
         }
 
         filterChain.doFilter(servletRequest, servletResponse);
     }
 
-    private boolean isUnmodified(URLConnection urlConnection, HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        long lastModified = urlConnection.getLastModified();
-        if(lastModified != 0) {
-            resp.addDateHeader("Last-Modified", lastModified);
-            long ifModifiedSince = req.getDateHeader("If-Modified-Since");
-            if(ifModifiedSince != -1 && lastModified <= ifModifiedSince) {
-                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-                return true;
-            }
+    private void send(CachedAsset asset, HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        // Byte ranges are served from the uncompressed content
+        CachedAsset.Variant variant = asset.select(req.getHeader("Range") == null ? req.getHeader("Accept-Encoding") : null);
 
+        if(asset.getMimeType() != null) {
+            resp.setContentType(asset.getMimeType());
         }
-        return false;
-    }
-
-
-    private boolean isDirectoryResource(URL resource, ClassLoader loader, String path) {
-
-        try {
-            if("file".equals(resource.getProtocol()) && new File(resource.toURI().getPath()).isDirectory()) {
-                return true;
-
-            } else if("jar".equals(resource.getProtocol()) && loader.getResource(path +"/") != null) {
-                return true;
-            }
-            return false;
-        } catch (URISyntaxException e) {
-            throw new RuntimeException(e);
+        if(asset.hasVariants()) {
+            resp.setHeader("Vary", "Accept-Encoding");
         }
-
-    }
-
-    private void copy(InputStream input, OutputStream output) throws IOException {
-        byte[] buffer = new byte[1024 * 4];
-        int n;
-        while (-1 != (n = input.read(buffer))) {
-            output.write(buffer, 0, n);
+        if(variant.encoding != null) {
+            resp.setHeader("Content-Encoding", variant.encoding);
         }
+        StaticContent.send(req, resp, StaticContent.of(variant.content, asset.getLastModified(), variant.etag));
     }
 
     @Override
     public void destroy() {
-
+        files.close();
     }
 }
 
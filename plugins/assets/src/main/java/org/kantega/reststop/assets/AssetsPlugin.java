@@ -21,6 +21,7 @@ import org.kantega.reststop.classloaderutils.PluginClassLoader;
 import org.kantega.reststop.servlet.api.FilterPhase;
 import org.kantega.reststop.servlet.api.ServletBuilder;
 
+import javax.annotation.PreDestroy;
 import javax.servlet.Filter;
 import java.util.Collection;
 
@@ -33,11 +34,19 @@ public class AssetsPlugin {
     @Export
     private final Filter assetFilter;
 
+    private final AssetFilter filter;
+
     public AssetsPlugin(ServletBuilder servletBuilder, Collection<PluginClassLoader> pluginClassLoaders,
                         @Config(defaultValue = "/assets/") String assetFilterMapping,
-                        @Config(defaultValue = "assets/") String assetFilterClassPathPrefix) {
-        AssetFilter filter = new AssetFilter(pluginClassLoaders, assetFilterClassPathPrefix, assetFilterMapping);
+                        @Config(defaultValue = "assets/") String assetFilterClassPathPrefix,
+                        @Config(defaultValue = "33554432") long assetCacheSize) {
+        filter = new AssetFilter(pluginClassLoaders, assetFilterClassPathPrefix, assetFilterMapping, assetCacheSize);
 
         assetFilter = servletBuilder.filter(filter, FilterPhase.USER, assetFilterMapping +"*");
     }
+
+    @PreDestroy
+    public void destroy() {
+        filter.destroy();
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.assets;
+
+/**
+ * An asset's content and the compressed variants worth sending instead.
+ */
+class CachedAsset {
+
+    private final String mimeType;
+    private final long lastModified;
+    private final Variant identity;
+    private final Variant gzip;
+    private final Variant deflate;
+
+    CachedAsset(String mimeType, long lastModified, Variant identity, Variant gzip, Variant deflate) {
+        this.mimeType = mimeType;
+        this.lastModified = lastModified;
+        this.identity = identity;
+        this.gzip = gzip;
+        this.deflate = deflate;
+    }
+
+    String getMimeType() {
+        return mimeType;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+
+    long getSize() {
+        return identity.content.length
+                + (gzip == null ? 0 : gzip.content.length)
+                + (deflate == null ? 0 : deflate.content.length);
+    }
+
+    boolean hasVariants() {
+        return gzip != null || deflate != null;
+    }
+
+    /**
+     * Picks a compressed variant the client accepts according to its Accept-Encoding header, gzip before deflate.
+     */
+    Variant select(String acceptEncoding) {
+        if (acceptEncoding == null || !hasVariants()) {
+            return identity;
+        }
+        if (gzip != null && accepts(acceptEncoding, "gzip")) {
+            return gzip;
+        }
+        if (deflate != null && accepts(acceptEncoding, "deflate")) {
+            return deflate;
+        }
+        return identity;
+    }
+
+    /**
+     * An entry naming the encoding decides, whatever its position, otherwise a <code>*</code> entry does.
+     */
+    private static boolean accepts(String acceptEncoding, String encoding) {
+        Boolean wildcard = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase(encoding)) {
+                return isAcceptable(parts);
+            }
+            if (name.equals("*") && wildcard == null) {
+                wildcard = isAcceptable(parts);
+            }
+        }
+        return wildcard != null && wildcard;
+    }
+
+    private static boolean isAcceptable(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String param = parts[i].trim();
+            if (param.startsWith("q=") || param.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2)) > 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    static class Variant {
+        final byte[] content;
+        final String encoding;
+        final String etag;
+
+        Variant(byte[] content, String encoding, String etag) {
+            this.content = content;
+            this.encoding = encoding;
+            this.etag = etag;
+        }
+    }
+}
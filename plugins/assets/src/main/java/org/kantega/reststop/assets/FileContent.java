@@ -0,0 +1,313 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.assets;
+
+import org.kantega.reststop.servlet.api.StaticContent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bodies of file resources and of JAR entries stored without compression, read with positional reads from file channels
+ * kept open for the most recently used files until {@link #close()}. Where a stored entry starts is found through the
+ * JAR's central directory. Other resources are read through their URL.
+ */
+class FileContent {
+
+    private static final int MAX_OPEN_FILES = 64;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Map<File, OpenFile> openFiles = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * A body reading the resource through an open file if it can be located, otherwise through its URL. The entity tag
+     * is made from the length and modification time.
+     */
+    StaticContent.Body of(URL resource) throws IOException {
+        Region region = closed ? null : locate(resource);
+        if (region == null) {
+            return StaticContent.of(resource);
+        }
+        long lastModified = region.file.lastModified;
+        String etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(region.length) + "\"";
+
+        return new StaticContent.Body() {
+            @Override
+            public long getLength() {
+                return region.length;
+            }
+
+            @Override
+            public long getLastModified() {
+                return lastModified;
+            }
+
+            @Override
+            public String getETag() {
+                return etag;
+            }
+
+            @Override
+            public void write(long start, long length, OutputStream out) throws IOException {
+                if (!region.file.read(region.offset + start, length, out)) {
+                    // Closed since it was located
+                    StaticContent.of(resource).write(start, length, out);
+                }
+            }
+        };
+    }
+
+    /**
+     * Closes the open files. Reads in progress finish first.
+     */
+    void close() {
+        closed = true;
+        for (OpenFile file : openFiles.values()) {
+            file.evict();
+        }
+        openFiles.clear();
+    }
+
+    private Region locate(URL resource) {
+        try {
+            if ("file".equals(resource.getProtocol())) {
+                File file = new File(resource.toURI());
+                if (!file.isFile()) {
+                    return null;
+                }
+                OpenFile open = open(file, false);
+                return new Region(open, 0, open.length);
+            } else if ("jar".equals(resource.getProtocol())) {
+                JarURLConnection connection = (JarURLConnection) resource.openConnection();
+                URL jarFileUrl = connection.getJarFileURL();
+                if (!"file".equals(jarFileUrl.getProtocol()) || connection.getEntryName() == null) {
+                    return null;
+                }
+                OpenFile open = open(new File(jarFileUrl.toURI()), true);
+                long[] entry = open.storedEntries.get(connection.getEntryName());
+                return entry == null ? null : new Region(open, entry[0], entry[1]);
+            }
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            // Fall back to reading through the URL
+        }
+        return null;
+    }
+
+    private OpenFile open(File file, boolean jar) throws IOException {
+        OpenFile open = openFiles.get(file);
+        if (open != null && open.isCurrent()) {
+            open.tick = clock.incrementAndGet();
+            return open;
+        }
+        OpenFile opened = new OpenFile(file, jar);
+        opened.tick = clock.incrementAndGet();
+        OpenFile replaced = openFiles.put(file, opened);
+        if (replaced != null) {
+            replaced.evict();
+        }
+        if (openFiles.size() > MAX_OPEN_FILES) {
+            evictLeastRecentlyUsed();
+        }
+        if (closed && openFiles.remove(file, opened)) {
+            opened.evict();
+        }
+        return opened;
+    }
+
+    private synchronized void evictLeastRecentlyUsed() {
+        List<OpenFile> files = new ArrayList<>(openFiles.values());
+        if (files.size() <= MAX_OPEN_FILES) {
+            return;
+        }
+        files.sort(Comparator.comparingLong(file -> file.tick));
+        int remove = Math.max(files.size() - MAX_OPEN_FILES, MAX_OPEN_FILES / 10);
+        for (int i = 0; i < remove; i++) {
+            if (openFiles.remove(files.get(i).file, files.get(i))) {
+                files.get(i).evict();
+            }
+        }
+    }
+
+    private static class Region {
+        private final OpenFile file;
+        private final long offset;
+        private final long length;
+
+        private Region(OpenFile file, long offset, long length) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * An open file, closed when evicted and no longer read from.
+     */
+    private static class OpenFile {
+
+        private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+        private static final int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+        private static final int LOCAL_FILE_HEADER = 0x04034b50;
+
+        private final File file;
+        private final long length;
+        private final long lastModified;
+        private final FileChannel channel;
+        // Data offset and size of each stored entry, for JAR files
+        private final Map<String, long[]> storedEntries;
+
+        private volatile long tick;
+        private int readers;
+        private boolean evicted;
+
+        private OpenFile(File file, boolean jar) throws IOException {
+            this.file = file;
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                this.storedEntries = jar ? readStoredEntries(channel) : Collections.emptyMap();
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        boolean isCurrent() {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+
+        /**
+         * @return false if the file has been closed
+         */
+        boolean read(long position, long length, OutputStream out) throws IOException {
+            synchronized (this) {
+                if (evicted) {
+                    return false;
+                }
+                readers++;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, BUFFER_SIZE));
+                while (length > 0) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), length));
+                    int read = channel.read(buffer, position);
+                    if (read <= 0) {
+                        throw new IOException("Unexpected end of " + file);
+                    }
+                    out.write(buffer.array(), 0, read);
+                    position += read;
+                    length -= read;
+                }
+                return true;
+            } finally {
+                synchronized (this) {
+                    if (--readers == 0 && evicted) {
+                        closeChannel();
+                    }
+                }
+            }
+        }
+
+        synchronized void evict() {
+            evicted = true;
+            if (readers == 0) {
+                closeChannel();
+            }
+        }
+
+        private void closeChannel() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing more to read
+            }
+        }
+
+        private static Map<String, long[]> readStoredEntries(FileChannel channel) throws IOException {
+            Map<String, long[]> entries = new HashMap<>();
+            int tailLength = (int) Math.min(channel.size(), 0xffff + 22);
+            ByteBuffer tail = read(channel, channel.size() - tailLength, tailLength);
+            int end = -1;
+            for (int i = tailLength - 22; i >= 0; i--) {
+                if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+                    end = i;
+                    break;
+                }
+            }
+            long directoryOffset = end == -1 ? -1 : tail.getInt(end + 16) & 0xffffffffL;
+            if (directoryOffset == -1 || directoryOffset == 0xffffffffL) {
+                // Not a JAR, or a ZIP64 one
+                return entries;
+            }
+            int directorySize = tail.getInt(end + 12);
+            ByteBuffer directory = read(channel, directoryOffset, directorySize);
+
+            int pos = 0;
+            while (pos + 46 <= directorySize && directory.getInt(pos) == CENTRAL_DIRECTORY_HEADER) {
+                int flags = directory.getShort(pos + 8) & 0xffff;
+                int method = directory.getShort(pos + 10) & 0xffff;
+                long size = directory.getInt(pos + 24) & 0xffffffffL;
+                int nameLength = directory.getShort(pos + 28) & 0xffff;
+                int extraLength = directory.getShort(pos + 30) & 0xffff;
+                int commentLength = directory.getShort(pos + 32) & 0xffff;
+                long localHeaderOffset = directory.getInt(pos + 42) & 0xffffffffL;
+
+                if (method == 0 && (flags & 1) == 0 && size != 0xffffffffL && localHeaderOffset != 0xffffffffL) {
+                    byte[] name = new byte[nameLength];
+                    for (int i = 0; i < nameLength; i++) {
+                        name[i] = directory.get(pos + 46 + i);
+                    }
+                    String entryName = new String(name, StandardCharsets.UTF_8);
+                    ByteBuffer header = read(channel, localHeaderOffset, 30);
+                    if (!entryName.endsWith("/") && header.getInt(0) == LOCAL_FILE_HEADER) {
+                        long dataOffset = localHeaderOffset + 30 + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+                        entries.put(entryName, new long[]{dataOffset, size});
+                    }
+                }
+                pos += 46 + nameLength + extraLength + commentLength;
+            }
+            return entries;
+        }
+
+        private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+            }
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.assets;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class AssetCacheTest {
+
+    @Test
+    public void shouldReadConcurrentMissesOnce() throws Exception {
+        AssetCache cache = new AssetCache(1024 * 1024);
+        CachedAsset asset = asset(100);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<CachedAsset>> results = new ArrayList<>();
+            results.add(executor.submit(() -> cache.load("/a", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return asset;
+            })));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(() -> cache.load("/a", () -> {
+                    loads.incrementAndGet();
+                    return asset(100);
+                })));
+            }
+            release.countDown();
+
+            for (Future<CachedAsset> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS), sameInstance(asset));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(loads.get(), is(1));
+        assertThat(cache.get("/a"), sameInstance(asset));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() throws Exception {
+        AssetCache cache = new AssetCache(1000);
+        for (int i = 0; i < 10; i++) {
+            CachedAsset asset = asset(100);
+            cache.load("/" + i, () -> asset);
+        }
+        assertThat(cache.get("/0") != null, is(true));
+
+        CachedAsset added = asset(100);
+        cache.load("/10", () -> added);
+
+        assertThat(cache.get("/0") != null, is(true));
+        assertThat(cache.get("/1"), nullValue());
+        assertThat(cache.get("/2"), nullValue());
+        assertThat(cache.get("/3") != null, is(true));
+        assertThat(cache.get("/10"), sameInstance(added));
+    }
+
+    @Test
+    public void shouldNotCacheFailedReads() throws Exception {
+        AssetCache cache = new AssetCache(1000);
+        try {
+            cache.load("/a", () -> {
+                throw new IOException("Gone");
+            });
+        } catch (IOException e) {
+            // Expected
+        }
+        assertThat(cache.get("/a"), nullValue());
+    }
+
+    private static CachedAsset asset(int size) {
+        return new CachedAsset("text/plain", 0, new CachedAsset.Variant(new byte[size], null, "\"a\""), null, null);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.assets;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class CachedAssetTest {
+
+    private final CachedAsset.Variant identity = new CachedAsset.Variant(new byte[100], null, "\"a\"");
+    private final CachedAsset.Variant gzip = new CachedAsset.Variant(new byte[10], "gzip", "\"a-gzip\"");
+    private final CachedAsset.Variant deflate = new CachedAsset.Variant(new byte[12], "deflate", "\"a-deflate\"");
+    private final CachedAsset asset = new CachedAsset("text/plain", 0, identity, gzip, deflate);
+
+    @Test
+    public void shouldPreferGzip() {
+        assertThat(asset.select("deflate, gzip"), is(gzip));
+        assertThat(asset.select("deflate"), is(deflate));
+        assertThat(asset.select("br"), is(identity));
+        assertThat(asset.select(null), is(identity));
+    }
+
+    @Test
+    public void shouldNotSendRefusedEncoding() {
+        assertThat(asset.select("gzip;q=0, deflate"), is(deflate));
+        assertThat(asset.select("gzip; q=0, deflate;q=0"), is(identity));
+    }
+
+    @Test
+    public void shouldLetExplicitEncodingOverrideWildcard() {
+        assertThat(asset.select("*, gzip;q=0"), is(deflate));
+        assertThat(asset.select("*;q=0, gzip"), is(gzip));
+        assertThat(asset.select("*;q=0"), is(identity));
+        assertThat(asset.select("*"), is(gzip));
+    }
+}
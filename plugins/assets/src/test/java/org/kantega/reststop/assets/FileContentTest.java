@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.assets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kantega.reststop.servlet.api.StaticContent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class FileContentTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final FileContent files = new FileContent();
+
+    @Test
+    public void shouldReadRangesOfStoredAndDeflatedEntries() throws IOException {
+        File jar = folder.newFile("assets.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            add(out, "assets/stored.txt", "stored content", ZipEntry.STORED);
+            add(out, "assets/deflated.txt", "deflated content", ZipEntry.DEFLATED);
+        }
+
+        for (String name : new String[]{"stored", "deflated"}) {
+            StaticContent.Body body = files.of(new URL("jar:" + jar.toURI() + "!/assets/" + name + ".txt"));
+            assertThat(body.getLength(), is((long) (name + " content").length()));
+            assertThat(read(body, 0, body.getLength()), is(name + " content"));
+            assertThat(read(body, name.length() + 1, 3), is("con"));
+        }
+    }
+
+    @Test
+    public void shouldReadFilesAfterClose() throws IOException {
+        File file = folder.newFile("asset.txt");
+        Files.write(file.toPath(), "file content".getBytes(StandardCharsets.UTF_8));
+
+        StaticContent.Body body = files.of(file.toURI().toURL());
+        assertThat(read(body, 5, 7), is("content"));
+
+        files.close();
+
+        assertThat(read(body, 0, 4), is("file"));
+        assertThat(read(files.of(file.toURI().toURL()), 0, 12), is("file content"));
+    }
+
+    private static String read(StaticContent.Body body, long start, long length) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.write(start, length, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void add(ZipOutputStream out, String name, String content, int method) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            entry.setSize(bytes.length);
+            entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(bytes);
+        out.closeEntry();
+    }
+}
@@ -31,6 +31,14 @@ public interface ApplicationBuilder {
 
         Build resource(Class resource);
 
+        /**
+         * Runs the resource methods of the application on an executor, releasing the request thread while they run.
+         * Builders without an executor ignore this, and the resource methods run on the request thread.
+         */
+        default Build async() {
+            return this;
+        }
+
         Application build();
     }
 }
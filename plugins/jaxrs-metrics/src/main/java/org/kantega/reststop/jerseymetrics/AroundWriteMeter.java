@@ -16,10 +16,6 @@
 
 package org.kantega.reststop.jerseymetrics;
 
-import com.codahale.metrics.MetricRegistry;
-
-import static com.codahale.metrics.MetricRegistry.name;
-
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.ext.Provider;
 import javax.ws.rs.ext.WriterInterceptor;
@@ -31,14 +27,19 @@ import java.io.IOException;
  */
 @Provider
 public class AroundWriteMeter implements WriterInterceptor {
+
+    private final ResourceMethodMetrics metrics;
+
+    AroundWriteMeter(ResourceMethodMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     @Override
     public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
         try {
             context.proceed();
         } catch (Throwable e) {
-            String path = (String) context.getProperty("metrics.path");
-            String name = name("REST", "WRITE", e.getClass().getSimpleName(), path);
-            JerseyMetricsPlugin.getMetricRegistry().meter(name).mark();
+            metrics.writeErrorMeter(e.getClass()).mark();
 
             throw e;
         }
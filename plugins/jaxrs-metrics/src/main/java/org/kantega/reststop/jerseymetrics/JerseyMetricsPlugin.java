@@ -29,21 +29,13 @@ import javax.ws.rs.core.Application;
 @Plugin
 public class JerseyMetricsPlugin {
 
-
-    public static MetricRegistry metricRegistry;
-
     @Export
     private final Application metricApp;
 
     public JerseyMetricsPlugin(MetricRegistry metricRegistry,
                                ApplicationBuilder applicationBuilder) {
-        this.metricRegistry = metricRegistry;
         metricApp = applicationBuilder.application()
-                .resource(TimerFeature.class)
-                .resource(AroundWriteMeter.class).build();
-    }
-
-    public static MetricRegistry getMetricRegistry() {
-        return metricRegistry;
+                .singleton(new TimerFeature(metricRegistry))
+                .build();
     }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.jerseymetrics;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * The metrics of one resource method, looked up in the registry once instead of for every request.
+ */
+class ResourceMethodMetrics {
+
+    private final MetricRegistry registry;
+    private final String path;
+    private final String httpMethod;
+    private final Timer timer;
+    private final Map<String, Timer> otherMethodTimers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Meter> writeErrorMeters = new ConcurrentHashMap<>();
+
+    /**
+     * @param httpMethod the method the resource method is designated for, or null for sub-resource locators
+     */
+    ResourceMethodMetrics(MetricRegistry registry, String path, String httpMethod) {
+        this.registry = registry;
+        this.path = path;
+        this.httpMethod = httpMethod;
+        this.timer = httpMethod == null || path == null ? null : registry.timer(name("REST", httpMethod, path));
+    }
+
+    /**
+     * @return the timer of requests with the given method, such as HEAD requests answered by a GET method
+     */
+    Timer timer(String method) {
+        if (method.equals(httpMethod)) {
+            return timer;
+        }
+        return otherMethodTimers.computeIfAbsent(method, m -> registry.timer(name("REST", m, path)));
+    }
+
+    Meter writeErrorMeter(Class<? extends Throwable> exceptionClass) {
+        return writeErrorMeters.computeIfAbsent(exceptionClass, c -> registry.meter(name("REST", "WRITE", c.getSimpleName(), path)));
+    }
+}
@@ -16,7 +16,6 @@
 
 package org.kantega.reststop.jerseymetrics;
 
-import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 
 import javax.ws.rs.container.ContainerRequestContext;
@@ -24,8 +23,6 @@ import javax.ws.rs.container.ContainerRequestFilter;
 import javax.ws.rs.ext.Provider;
 import java.io.IOException;
 
-import static com.codahale.metrics.MetricRegistry.name;
-
 /**
  *
  */
@@ -33,26 +30,20 @@ import static com.codahale.metrics.MetricRegistry.name;
 public class TimerBeforeFilter implements ContainerRequestFilter {
 
 
-    private final String path;
+    private final ResourceMethodMetrics metrics;
 
-    public TimerBeforeFilter(String path) {
+    TimerBeforeFilter(ResourceMethodMetrics metrics) {
 
-        this.path = path;
+        this.metrics = metrics;
     }
 
     @Override
     public void filter(ContainerRequestContext requestContext) throws IOException {
 
-        MetricRegistry registry = JerseyMetricsPlugin.getMetricRegistry();
-
-        String name = name("REST", requestContext.getMethod(), path);
-
-        Timer.Context context = registry.timer(name).time();
+        Timer.Context context = metrics.timer(requestContext.getMethod()).time();
 
         requestContext.setProperty("metrics.timeContext", context);
 
-        requestContext.setProperty("metrics.path", path);
-
     }
 
 
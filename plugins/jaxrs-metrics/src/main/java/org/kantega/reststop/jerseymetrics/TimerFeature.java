@@ -16,11 +16,16 @@
 
 package org.kantega.reststop.jerseymetrics;
 
+import com.codahale.metrics.MetricRegistry;
+
+import javax.ws.rs.HttpMethod;
 import javax.ws.rs.Path;
 import javax.ws.rs.container.*;
 import javax.ws.rs.core.FeatureContext;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.ext.Provider;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
 
 /**
  *
@@ -28,6 +33,11 @@ import javax.ws.rs.ext.Provider;
 @Provider
 public class TimerFeature implements DynamicFeature {
 
+    private final MetricRegistry metricRegistry;
+
+    public TimerFeature(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
 
     @Override
     public void configure(ResourceInfo resourceInfo, FeatureContext context) {
@@ -36,14 +46,30 @@ public class TimerFeature implements DynamicFeature {
         Path classPath  = resourceInfo.getResourceClass().getAnnotation(Path.class);
 
         Path path = methodPath != null ? methodPath : classPath;
+        String template = null;
         if(path != null) {
             UriBuilder builder = methodPath != null
                     ? UriBuilder.fromResource(resourceInfo.getResourceClass()).path(resourceInfo.getResourceClass(),resourceInfo.getResourceMethod().getName())
                     : UriBuilder.fromResource(resourceInfo.getResourceClass());
 
-            String template = builder.toTemplate();
-            context.register(new TimerBeforeFilter(template));
+            template = builder.toTemplate();
+        }
+
+        ResourceMethodMetrics metrics = new ResourceMethodMetrics(metricRegistry, template, httpMethod(resourceInfo.getResourceMethod()));
+        if(template != null) {
+            context.register(new TimerBeforeFilter(metrics));
             context.register(TimerAfterFilter.class);
         }
+        context.register(new AroundWriteMeter(metrics));
+    }
+
+    private static String httpMethod(Method method) {
+        for (Annotation annotation : method.getAnnotations()) {
+            HttpMethod httpMethod = annotation.annotationType().getAnnotation(HttpMethod.class);
+            if(httpMethod != null) {
+                return httpMethod.value();
+            }
+        }
+        return null;
     }
 }
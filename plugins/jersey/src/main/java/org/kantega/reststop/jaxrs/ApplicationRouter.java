@@ -0,0 +1,392 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.jaxrs;
+
+import org.glassfish.jersey.server.ExtendedResourceContext;
+import org.glassfish.jersey.server.model.Resource;
+import org.glassfish.jersey.servlet.ServletContainer;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import javax.ws.rs.Path;
+import javax.ws.rs.core.Application;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.*;
+
+/**
+ * Gives each application its own Jersey container, and routes requests by their decoded first path segment, without
+ * matrix parameters, to the containers with root resources there. Applications with a template as their first segment
+ * are tried for every request. Candidates are tried in the order the applications were deployed, and a container
+ * answering 404 or 405 passes the request on to the next one. Applications without root resources, such as those only
+ * registering features or filters, are added to every container instead of getting one of their own.
+ */
+class ApplicationRouter implements Filter {
+
+    interface ContainerFactory {
+        ServletContainer start(Collection<Application> applications) throws ServletException;
+    }
+
+    private final ContainerFactory containerFactory;
+
+    private Map<Application, Route> deployed = new IdentityHashMap<>();
+
+    private Set<Application> providers = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private volatile Routes routes = new Routes(Collections.emptyList());
+
+    ApplicationRouter(ContainerFactory containerFactory) {
+        this.containerFactory = containerFactory;
+    }
+
+    /**
+     * Starts containers for the applications not already deployed, and destroys those of applications no longer present.
+     * All containers are restarted when the applications without root resources change.
+     */
+    synchronized void deploy(Collection<Application> applications) throws ServletException {
+        Set<Application> nextProviders = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Application> resourceApplications = new ArrayList<>();
+        for (Application application : applications) {
+            if (hasRootResources(application)) {
+                resourceApplications.add(application);
+            } else {
+                nextProviders.add(application);
+            }
+        }
+        Map<Application, Route> reusable = nextProviders.equals(providers) ? deployed : Collections.emptyMap();
+
+        Map<Application, Route> next = new IdentityHashMap<>();
+        List<Route> ordered = new ArrayList<>();
+        try {
+            for (Application application : resourceApplications) {
+                Route route = reusable.get(application);
+                if (route == null) {
+                    List<Application> containerApplications = new ArrayList<>(nextProviders);
+                    containerApplications.add(0, application);
+                    route = new Route(containerFactory.start(containerApplications));
+                }
+                next.put(application, route);
+                ordered.add(route);
+            }
+        } catch (ServletException | RuntimeException e) {
+            for (Map.Entry<Application, Route> entry : next.entrySet()) {
+                if (reusable.get(entry.getKey()) != entry.getValue()) {
+                    entry.getValue().filter.destroy();
+                }
+            }
+            throw e;
+        }
+
+        routes = new Routes(ordered);
+
+        for (Map.Entry<Application, Route> entry : deployed.entrySet()) {
+            if (next.get(entry.getKey()) != entry.getValue()) {
+                entry.getValue().filter.destroy();
+            }
+        }
+        deployed = next;
+        providers = nextProviders;
+    }
+
+    private static boolean hasRootResources(Application application) {
+        for (Class<?> type : application.getClasses()) {
+            if (type.isAnnotationPresent(Path.class)) {
+                return true;
+            }
+        }
+        for (Object singleton : application.getSingletons()) {
+            if (singleton.getClass().isAnnotationPresent(Path.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest req = (HttpServletRequest) request;
+        String path = req.getRequestURI().substring(req.getContextPath().length());
+        new RouteChain(routes.resolve(requestSegment(path)), chain).doFilter(request, response);
+    }
+
+    @Override
+    public synchronized void destroy() {
+        routes = new Routes(Collections.emptyList());
+        for (Route route : deployed.values()) {
+            route.filter.destroy();
+        }
+        deployed = new IdentityHashMap<>();
+    }
+
+    private static String firstSegment(String path) {
+        int start = path.startsWith("/") ? 1 : 0;
+        int end = path.indexOf('/', start);
+        return end < 0 ? path.substring(start) : path.substring(start, end);
+    }
+
+    /**
+     * The first segment of a request path, without matrix parameters and decoded.
+     */
+    static String requestSegment(String path) {
+        String segment = firstSegment(path);
+        int matrix = segment.indexOf(';');
+        if (matrix >= 0) {
+            segment = segment.substring(0, matrix);
+        }
+        if (segment.indexOf('%') < 0) {
+            return segment;
+        }
+        try {
+            return URLDecoder.decode(segment.replace("+", "%2B"), "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return segment;
+        }
+    }
+
+    private static class Route {
+        private final SwappingJerseyFilter filter = new SwappingJerseyFilter();
+        private final Set<String> segments = new HashSet<>();
+        private boolean anySegment;
+
+        private Route(ServletContainer container) {
+            filter.swap(container);
+            ExtendedResourceContext resourceContext = container.getApplicationHandler().getServiceLocator().getService(ExtendedResourceContext.class);
+            for (Resource resource : resourceContext.getResourceModel().getRootResources()) {
+                String segment = firstSegment(resource.getPath() == null ? "" : resource.getPath());
+                if (segment.isEmpty() || segment.contains("{")) {
+                    anySegment = true;
+                } else {
+                    segments.add(segment);
+                }
+            }
+        }
+    }
+
+    private static class Routes {
+        private final Map<String, Route[]> bySegment = new HashMap<>();
+        private final Route[] anySegment;
+
+        private Routes(Collection<Route> routes) {
+            List<Route> any = new ArrayList<>();
+            Map<String, List<Route>> literal = new HashMap<>();
+            for (Route route : routes) {
+                if (route.anySegment) {
+                    any.add(route);
+                }
+                for (String segment : route.segments) {
+                    literal.computeIfAbsent(segment, s -> new ArrayList<>()).add(route);
+                }
+            }
+            anySegment = any.toArray(new Route[0]);
+            for (Map.Entry<String, List<Route>> entry : literal.entrySet()) {
+                List<Route> candidates = new ArrayList<>(entry.getValue());
+                for (Route route : any) {
+                    if (!candidates.contains(route)) {
+                        candidates.add(route);
+                    }
+                }
+                bySegment.put(entry.getKey(), candidates.toArray(new Route[0]));
+            }
+        }
+
+        Route[] resolve(String segment) {
+            Route[] candidates = bySegment.get(segment);
+            return candidates != null ? candidates : anySegment;
+        }
+    }
+
+    private static class RouteChain implements FilterChain {
+        private final Route[] candidates;
+        private final FilterChain chain;
+        private int position;
+        private NotAllowedResponse notAllowed;
+
+        private RouteChain(Route[] candidates, FilterChain chain) {
+            this.candidates = candidates;
+            this.chain = chain;
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+            if (response instanceof NotAllowedResponse) {
+                // Passed on by a container answering 404
+                response = ((NotAllowedResponse) response).getResponse();
+            }
+            while (position < candidates.length) {
+                Route route = candidates[position++];
+                NotAllowedResponse candidateResponse = position < candidates.length
+                        ? new NotAllowedResponse((HttpServletResponse) response)
+                        : null;
+                // A container destroyed after the routes were read is skipped
+                if (route.filter.tryFilter(request, candidateResponse != null ? candidateResponse : response, this)) {
+                    if (candidateResponse == null || !candidateResponse.notAllowed) {
+                        return;
+                    }
+                    notAllowed = candidateResponse;
+                }
+            }
+            if (notAllowed != null) {
+                notAllowed.replay();
+                return;
+            }
+            chain.doFilter(request, response);
+        }
+    }
+
+    /**
+     * Holds back a 405 status or error and the Allow header sent with it, so the next candidate can be tried instead.
+     * Jersey sets the status before sending the error, and before writing an entity if there is one.
+     */
+    private static class NotAllowedResponse extends HttpServletResponseWrapper {
+        private final List<String> allow = new ArrayList<>();
+        private boolean statusHeld;
+        private String reason;
+        private boolean notAllowed;
+
+        private NotAllowedResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        /**
+         * Sends the 405 error held back, when no other candidate handled the request.
+         */
+        void replay() throws IOException {
+            passHeld();
+            super.sendError(SC_METHOD_NOT_ALLOWED);
+        }
+
+        @SuppressWarnings("deprecation")
+        private void passHeld() {
+            for (String value : allow) {
+                super.addHeader("Allow", value);
+            }
+            allow.clear();
+            if (statusHeld) {
+                statusHeld = false;
+                if (reason == null) {
+                    super.setStatus(SC_METHOD_NOT_ALLOWED);
+                } else {
+                    super.setStatus(SC_METHOD_NOT_ALLOWED, reason);
+                }
+            }
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            if (sc == SC_METHOD_NOT_ALLOWED) {
+                notAllowed = true;
+            } else {
+                statusHeld = false;
+                passHeld();
+                super.sendError(sc, msg);
+            }
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            if (sc == SC_METHOD_NOT_ALLOWED) {
+                notAllowed = true;
+            } else {
+                statusHeld = false;
+                passHeld();
+                super.sendError(sc);
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if ("Allow".equalsIgnoreCase(name)) {
+                allow.clear();
+                allow.add(value);
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if ("Allow".equalsIgnoreCase(name)) {
+                allow.add(value);
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public int getStatus() {
+            return statusHeld ? SC_METHOD_NOT_ALLOWED : super.getStatus();
+        }
+
+        @Override
+        public void setStatus(int sc) {
+            if (sc == SC_METHOD_NOT_ALLOWED) {
+                statusHeld = true;
+                reason = null;
+            } else {
+                statusHeld = false;
+                passHeld();
+                super.setStatus(sc);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void setStatus(int sc, String sm) {
+            if (sc == SC_METHOD_NOT_ALLOWED) {
+                statusHeld = true;
+                reason = sm;
+            } else {
+                statusHeld = false;
+                passHeld();
+                super.setStatus(sc, sm);
+            }
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            passHeld();
+            super.sendRedirect(location);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            passHeld();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            passHeld();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            passHeld();
+            super.flushBuffer();
+        }
+    }
+}
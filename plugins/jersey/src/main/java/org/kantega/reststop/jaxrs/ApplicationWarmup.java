@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.jaxrs;
+
+import org.glassfish.jersey.message.MessageBodyWorkers;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ExtendedResourceContext;
+import org.glassfish.jersey.server.model.Invocable;
+import org.glassfish.jersey.server.model.Parameter;
+import org.glassfish.jersey.server.model.Resource;
+import org.glassfish.jersey.server.model.ResourceMethod;
+
+import javax.ws.rs.core.MediaType;
+import java.lang.annotation.Annotation;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Looks up the message body readers and writers of every resource method, so Jersey has them cached
+ * before the application takes requests.
+ */
+class ApplicationWarmup {
+
+    static void warmUp(ApplicationHandler handler) {
+        ExtendedResourceContext resourceContext = handler.getServiceLocator().getService(ExtendedResourceContext.class);
+        MessageBodyWorkers workers = handler.getServiceLocator().getService(MessageBodyWorkers.class);
+        if (resourceContext == null || workers == null) {
+            return;
+        }
+        for (Resource resource : resourceContext.getResourceModel().getRootResources()) {
+            warmUp(resource, workers);
+        }
+    }
+
+    private static void warmUp(Resource resource, MessageBodyWorkers workers) {
+        for (ResourceMethod method : resource.getResourceMethods()) {
+            Invocable invocable = method.getInvocable();
+            Annotation[] annotations = invocable.getHandlingMethod() == null
+                    ? new Annotation[0]
+                    : invocable.getHandlingMethod().getDeclaredAnnotations();
+
+            Class<?> responseType = invocable.getRawResponseType();
+            if (responseType != null && responseType != void.class && responseType != Void.class) {
+                for (MediaType mediaType : orWildcard(method.getProducedTypes())) {
+                    workers.getMessageBodyWriter(responseType, invocable.getResponseType(), annotations, mediaType);
+                }
+            }
+
+            for (Parameter parameter : invocable.getParameters()) {
+                if (parameter.getSource() == Parameter.Source.ENTITY) {
+                    for (MediaType mediaType : orWildcard(method.getConsumedTypes())) {
+                        workers.getMessageBodyReader(parameter.getRawType(), parameter.getType(), parameter.getAnnotations(), mediaType);
+                    }
+                }
+            }
+        }
+        for (Resource child : resource.getChildResources()) {
+            warmUp(child, workers);
+        }
+    }
+
+    private static List<MediaType> orWildcard(List<MediaType> mediaTypes) {
+        return mediaTypes.isEmpty() ? Collections.singletonList(MediaType.WILDCARD_TYPE) : mediaTypes;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.jaxrs;
+
+import org.glassfish.jersey.server.ManagedAsyncExecutor;
+import org.glassfish.jersey.spi.ExecutorServiceProvider;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Gives Jersey the plugin's executor for managed async resource methods. The executor outlives the Jersey
+ * applications using it, so it is not shut down when they are.
+ */
+@ManagedAsyncExecutor
+class AsyncExecutorProvider implements ExecutorServiceProvider {
+
+    private final ExecutorService executor;
+
+    AsyncExecutorProvider(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public ExecutorService getExecutorService() {
+        return executor;
+    }
+
+    @Override
+    public void dispose(ExecutorService executorService) {
+
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.jaxrs;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes an application/x-www-form-urlencoded body as it is written to it, without keeping the body itself.
+ * Bodies with more keys or bytes than allowed are not decoded further, and asking for their parameters fails.
+ */
+class FormParser {
+
+    private final Charset charset;
+    private final int maxKeys;
+    private final long maxSize;
+
+    private final Map<String, List<String>> parameters = new LinkedHashMap<>();
+    private final ByteArrayOutputStream token = new ByteArrayOutputStream();
+    private String name;
+    private int keys;
+    private long size;
+    private int percent = -1;
+    private int percentDigits;
+    private byte percentFirst;
+    private String overflow;
+    private boolean finished;
+
+    FormParser(Charset charset, int maxKeys, long maxSize) {
+        this.charset = charset;
+        this.maxKeys = maxKeys;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return whether the body had more keys or bytes than allowed, so the rest of it needn't be written
+     */
+    boolean isOverflowed() {
+        return overflow != null;
+    }
+
+    void write(byte[] bytes, int offset, int length) {
+        if (overflow != null || finished) {
+            return;
+        }
+        size += length;
+        if (size > maxSize) {
+            overflow = "Form too large: more than " + maxSize + " bytes";
+            return;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            write(bytes[i]);
+        }
+    }
+
+    private void write(byte b) {
+        if (percentDigits > 0) {
+            int digit = Character.digit(b, 16);
+            if (digit >= 0) {
+                percent = percent * 16 + digit;
+                percentFirst = b;
+                if (++percentDigits == 3) {
+                    token.write(percent);
+                    percentDigits = 0;
+                }
+                return;
+            }
+            // Not an escape after all, keep it as it was
+            token.write('%');
+            if (percentDigits == 2) {
+                token.write(percentFirst);
+            }
+            percentDigits = 0;
+        }
+        switch (b) {
+            case '%':
+                percent = 0;
+                percentDigits = 1;
+                break;
+            case '+':
+                token.write(' ');
+                break;
+            case '=':
+                if (name == null) {
+                    name = token();
+                } else {
+                    token.write(b);
+                }
+                break;
+            case '&':
+                endParameter();
+                break;
+            default:
+                token.write(b);
+        }
+    }
+
+    void finish() {
+        if (overflow == null && !finished) {
+            if (percentDigits > 0) {
+                token.write('%');
+                if (percentDigits == 2) {
+                    token.write(percentFirst);
+                }
+                percentDigits = 0;
+            }
+            endParameter();
+        }
+        finished = true;
+    }
+
+    private void endParameter() {
+        String value = token();
+        if (name == null) {
+            name = value;
+            value = "";
+        }
+        if (!name.isEmpty() || !value.isEmpty()) {
+            if (++keys > maxKeys) {
+                overflow = "Form has more than " + maxKeys + " keys";
+                return;
+            }
+            parameters.computeIfAbsent(name, n -> new ArrayList<>()).add(value);
+        }
+        name = null;
+    }
+
+    private String token() {
+        String value = new String(token.toByteArray(), charset);
+        token.reset();
+        return value;
+    }
+
+    /**
+     * @throws IllegalStateException if the form was larger than allowed
+     */
+    Map<String, List<String>> getParameters() {
+        if (overflow != null) {
+            throw new IllegalStateException(overflow);
+        }
+        return parameters;
+    }
+}
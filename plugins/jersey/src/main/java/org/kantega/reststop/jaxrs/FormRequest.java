@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.jaxrs;
+
+import org.glassfish.jersey.server.internal.InternalServerProperties;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.ws.rs.core.Form;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A form POST whose parameters are decoded the first time they are asked for. If Jersey already decoded the form for
+ * its form parameters, that form is used. Otherwise whatever is left of the body is decoded then.
+ */
+class FormRequest extends HttpServletRequestWrapper {
+
+    private final int maxKeys;
+    private final long maxSize;
+
+    private Map<String, String[]> parameters;
+
+    FormRequest(HttpServletRequest request, int maxKeys, long maxSize) {
+        super(request);
+        this.maxKeys = maxKeys;
+        this.maxSize = maxSize;
+    }
+
+    static boolean isForm(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        if (contentType == null || !"POST".equals(request.getMethod())) {
+            return false;
+        }
+        int semicolon = contentType.indexOf(';');
+        String mediaType = (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim();
+        return mediaType.equalsIgnoreCase("application/x-www-form-urlencoded");
+    }
+
+    private Charset charset() {
+        String encoding = getCharacterEncoding();
+        try {
+            return encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    private Map<String, String[]> parameters() {
+        if (parameters == null) {
+            try {
+                Map<String, List<String>> form = jerseyForm();
+                if (form == null) {
+                    form = parseBody();
+                }
+
+                // The input stream is taken, so the container only gives the query parameters
+                Map<String, String[]> merged = new LinkedHashMap<>(super.getParameterMap());
+                for (Map.Entry<String, List<String>> entry : form.entrySet()) {
+                    String[] query = merged.get(entry.getKey());
+                    List<String> values = new ArrayList<>();
+                    if (query != null) {
+                        values.addAll(Arrays.asList(query));
+                    }
+                    values.addAll(entry.getValue());
+                    merged.put(entry.getKey(), values.toArray(new String[values.size()]));
+                }
+                parameters = Collections.unmodifiableMap(merged);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * @return the form Jersey kept as a request property when injecting form parameters, or null if it didn't
+     */
+    private Map<String, List<String>> jerseyForm() throws UnsupportedEncodingException {
+        Object decoded = getAttribute(InternalServerProperties.FORM_DECODED_PROPERTY);
+        if (decoded instanceof Form) {
+            return ((Form) decoded).asMap();
+        }
+        Object encoded = getAttribute(InternalServerProperties.FORM_PROPERTY);
+        if (encoded instanceof Form) {
+            String charset = charset().name();
+            Map<String, List<String>> form = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> entry : ((Form) encoded).asMap().entrySet()) {
+                List<String> values = form.computeIfAbsent(URLDecoder.decode(entry.getKey(), charset), n -> new ArrayList<>());
+                for (String value : entry.getValue()) {
+                    values.add(URLDecoder.decode(value, charset));
+                }
+            }
+            return form;
+        }
+        return null;
+    }
+
+    private Map<String, List<String>> parseBody() throws IOException {
+        FormParser parser = new FormParser(charset(), maxKeys, maxSize);
+        ServletInputStream in = getInputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while (!parser.isOverflowed() && (read = in.read(buffer)) >= 0) {
+            parser.write(buffer, 0, read);
+        }
+        parser.finish();
+        return parser.getParameters();
+    }
+
+    @Override
+    public String getParameter(String name) {
+        String[] values = parameters().get(name);
+        return values == null || values.length == 0 ? null : values[0];
+    }
+
+    @Override
+    public Map<String, String[]> getParameterMap() {
+        return parameters();
+    }
+
+    @Override
+    public Enumeration<String> getParameterNames() {
+        return Collections.enumeration(parameters().keySet());
+    }
+
+    @Override
+    public String[] getParameterValues(String name) {
+        return parameters().get(name);
+    }
+}
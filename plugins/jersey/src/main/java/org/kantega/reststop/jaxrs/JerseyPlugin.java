@@ -20,6 +20,7 @@ import org.glassfish.jersey.jackson.JacksonFeature;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.servlet.ServletContainer;
 import org.glassfish.jersey.servlet.ServletProperties;
+import org.kantega.reststop.api.Config;
 import org.kantega.reststop.api.Export;
 import org.kantega.reststop.api.Plugin;
 import org.kantega.reststop.jaxrsapi.ApplicationBuilder;
@@ -27,14 +28,17 @@ import org.kantega.reststop.jaxrsapi.ApplicationDeployer;
 import org.kantega.reststop.servlet.api.FilterPhase;
 import org.kantega.reststop.servlet.api.ServletBuilder;
 
+import javax.annotation.PreDestroy;
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.core.Application;
-import javax.ws.rs.core.MediaType;
 import java.io.IOException;
 import java.lang.reflect.Proxy;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
@@ -45,6 +49,8 @@ import static java.util.Collections.singletonList;
 @Plugin
 public class JerseyPlugin implements ApplicationDeployer, ApplicationBuilder {
 
+    static final String ASYNC_PROPERTY = "org.kantega.reststop.jaxrs.async";
+
 
     @Export
     private final Filter jerseyFilter;
@@ -53,16 +59,47 @@ public class JerseyPlugin implements ApplicationDeployer, ApplicationBuilder {
     private final ApplicationDeployer applicationDeployer = this;
 
     @Export final ApplicationBuilder applicationBuilder = this;
-    private ServletContainer filter;
 
-    public JerseyPlugin(final ServletBuilder reststop) throws ServletException {
+    private final SwappingJerseyFilter filter = new SwappingJerseyFilter();
+
+    private final ApplicationRouter router = new ApplicationRouter(this::startJerseyFilter);
+
+    private final boolean containerPerApplication;
+
+    private final int maxFormKeys;
+
+    private final int maxFormContentSize;
+
+    private final FilterConfig filterConfig;
+
+    private final ExecutorService asyncExecutor;
 
-        filter = addJerseyFilter(new ReststopApplication(emptyList()));
+    public JerseyPlugin(final ServletBuilder reststop,
+                        @Config(defaultValue = "false") boolean jerseyContainerPerApplication,
+                        @Config(defaultValue = "1000") int jerseyMaxFormKeys,
+                        @Config(defaultValue = "200000") int jerseyMaxFormContentSize,
+                        @Config(defaultValue = "100") int jerseyAsyncThreads) throws ServletException {
+
+        this.containerPerApplication = jerseyContainerPerApplication;
+        this.maxFormKeys = jerseyMaxFormKeys;
+        this.maxFormContentSize = jerseyMaxFormContentSize;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.asyncExecutor = Executors.newFixedThreadPool(jerseyAsyncThreads, r -> {
+            Thread thread = new Thread(r, "reststop-jaxrs-async-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
 
         String pathMapping = "/*";
-        filter.init(createFilterConfig(reststop, pathMapping));
+        filterConfig = createFilterConfig(reststop, pathMapping);
 
-        jerseyFilter = reststop.filter(filter, FilterPhase.USER, pathMapping);
+        if(containerPerApplication) {
+            jerseyFilter = reststop.filter(router, FilterPhase.USER, pathMapping);
+        } else {
+            filter.swap(startJerseyFilter(emptyList()));
+            jerseyFilter = reststop.filter(filter, FilterPhase.USER, pathMapping);
+        }
     }
 
     private FilterConfig createFilterConfig(ServletBuilder reststop, String pathMapping) {
@@ -74,15 +111,25 @@ public class JerseyPlugin implements ApplicationDeployer, ApplicationBuilder {
 
 
 
-    private ServletContainer addJerseyFilter(Application application) {
-        ResourceConfig resourceConfig = getResourceConfig(application);
+    /**
+     * Builds and starts a container for the applications, with its message body readers and writers looked up in advance
+     */
+    private ServletContainer startJerseyFilter(Collection<Application> applications) throws ServletException {
+        ServletContainer container = addJerseyFilter(applications);
+        container.init(filterConfig);
+        ApplicationWarmup.warmUp(container.getApplicationHandler());
+        return container;
+    }
+
+    private ServletContainer addJerseyFilter(Collection<Application> applications) {
+        ResourceConfig resourceConfig = getResourceConfig(applications);
 
         return new ServletContainer(resourceConfig) {
             @Override
             public void doFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws IOException, ServletException {
-                // Force read of request parameters if specified, otherwise Jersey will eat them
-                if(request.getMethod().equals("POST") && MediaType.APPLICATION_FORM_URLENCODED.equals(request.getContentType())) {
-                    request.getParameterMap();
+                // Form parameters are decoded as Jersey reads the body, so filters after Jersey still see them
+                if(FormRequest.isForm(request)) {
+                    request = new FormRequest(request, maxFormKeys, maxFormContentSize);
                 }
                 super.doFilter(request, response, chain);
             }
@@ -91,14 +138,45 @@ public class JerseyPlugin implements ApplicationDeployer, ApplicationBuilder {
 
     private void redeploy(Collection<Application> applications) {
         synchronized (JerseyPlugin.this) {
-            filter.reload(getResourceConfig(new ReststopApplication(applications)));
+            // Requests keep going to the current container until the new one is ready
+            try {
+                if(containerPerApplication) {
+                    router.deploy(applications);
+                } else {
+                    filter.swap(startJerseyFilter(applications));
+                }
+            } catch (ServletException e) {
+                throw new RuntimeException(e);
+            }
         }
 
     }
 
-    private ResourceConfig getResourceConfig(Application application) {
-        ResourceConfig resourceConfig = ResourceConfig.forApplication(application);
+    @PreDestroy
+    public void stop() {
+        filter.destroy();
+        router.destroy();
+        asyncExecutor.shutdown();
+    }
+
+    private ResourceConfig getResourceConfig(Collection<Application> applications) {
+        ResourceConfig resourceConfig = ResourceConfig.forApplication(new ReststopApplication(applications));
         resourceConfig.register(JacksonFeature.class);
+
+        Set<Class<?>> asyncClasses = new HashSet<>();
+        for (Application application : applications) {
+            if(Boolean.TRUE.equals(application.getProperties().get(ASYNC_PROPERTY))) {
+                asyncClasses.addAll(application.getClasses());
+                for (Object singleton : application.getSingletons()) {
+                    asyncClasses.add(singleton.getClass());
+                }
+            }
+        }
+        if(!asyncClasses.isEmpty()) {
+            resourceConfig.register(new ManagedAsyncProcessor(asyncClasses));
+            resourceConfig.register(new AsyncExecutorProvider(asyncExecutor));
+        }
+
         Map<String, Object> props = new HashMap<>(resourceConfig.getProperties());
         props.put(ServletProperties.FILTER_FORWARD_ON_404, "true");
         resourceConfig.setProperties(props);
@@ -115,6 +193,7 @@ public class JerseyPlugin implements ApplicationDeployer, ApplicationBuilder {
         return new Build() {
             private Set<Object> singletons = new HashSet<>();
             private Set<Class<?>> classes = new HashSet<>();
+            private boolean async;
 
             @Override
             public Build singleton(Object resource) {
@@ -128,8 +207,17 @@ public class JerseyPlugin implements ApplicationDeployer, ApplicationBuilder {
                 return this;
             }
 
+            @Override
+            public Build async() {
+                async = true;
+                return this;
+            }
+
             @Override
             public Application build() {
+                Map<String, Object> properties = async
+                        ? Collections.singletonMap(ASYNC_PROPERTY, true)
+                        : Collections.emptyMap();
                 return new Application() {
                     @Override
                     public Set<Class<?>> getClasses() {
@@ -143,7 +231,7 @@ public class JerseyPlugin implements ApplicationDeployer, ApplicationBuilder {
 
                     @Override
                     public Map<String, Object> getProperties() {
-                        return Collections.emptyMap();
+                        return properties;
                     }
                 };
             }
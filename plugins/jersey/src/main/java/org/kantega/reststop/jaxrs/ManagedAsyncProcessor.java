@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.jaxrs;
+
+import org.glassfish.jersey.server.model.ModelProcessor;
+import org.glassfish.jersey.server.model.Resource;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.model.ResourceModel;
+
+import javax.ws.rs.core.Configuration;
+import java.util.Set;
+
+/**
+ * Makes the resource methods of the given classes managed async, so Jersey runs them on its managed async executor
+ * and the request thread is released while they run.
+ */
+class ManagedAsyncProcessor implements ModelProcessor {
+
+    private final Set<Class<?>> asyncClasses;
+
+    ManagedAsyncProcessor(Set<Class<?>> asyncClasses) {
+        this.asyncClasses = asyncClasses;
+    }
+
+    @Override
+    public ResourceModel processResourceModel(ResourceModel resourceModel, Configuration configuration) {
+        return process(resourceModel, false);
+    }
+
+    @Override
+    public ResourceModel processSubResource(ResourceModel subResourceModel, Configuration configuration) {
+        return process(subResourceModel, true);
+    }
+
+    private ResourceModel process(ResourceModel model, boolean subResource) {
+        ResourceModel.Builder builder = new ResourceModel.Builder(subResource);
+        for (Resource resource : model.getResources()) {
+            builder.addResource(process(resource));
+        }
+        return builder.build();
+    }
+
+    private Resource process(Resource resource) {
+        Resource.Builder builder = null;
+        for (ResourceMethod method : resource.getResourceMethods()) {
+            if (!method.isManagedAsyncDeclared() && !method.isSuspendDeclared()
+                    && asyncClasses.contains(method.getInvocable().getHandler().getHandlerClass())) {
+                if (builder == null) {
+                    builder = Resource.builder(resource);
+                }
+                builder.updateMethod(method).managedAsync().build();
+            }
+        }
+        for (Resource child : resource.getChildResources()) {
+            Resource processed = process(child);
+            if (processed != child) {
+                if (builder == null) {
+                    builder = Resource.builder(resource);
+                }
+                builder.replaceChildResource(child, processed);
+            }
+        }
+        return builder == null ? resource : builder.build();
+    }
+}
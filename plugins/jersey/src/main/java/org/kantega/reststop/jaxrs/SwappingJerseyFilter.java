@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.jaxrs;
+
+import org.glassfish.jersey.servlet.ServletContainer;
+
+import javax.servlet.*;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dispatches to the current Jersey container. A new container is swapped in once it is started, while requests already
+ * in the previous one complete there before it is destroyed.
+ */
+class SwappingJerseyFilter implements Filter {
+
+    private volatile Deployed current;
+
+    /**
+     * @param container an initialized container
+     */
+    void swap(ServletContainer container) {
+        Deployed previous = current;
+        current = new Deployed(container);
+        if (previous != null) {
+            previous.retire();
+        }
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        if (!tryFilter(request, response, chain)) {
+            chain.doFilter(request, response);
+        }
+    }
+
+    /**
+     * @return false without handling the request if this filter was destroyed
+     */
+    boolean tryFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        Deployed deployed = acquire();
+        if (deployed == null) {
+            return false;
+        }
+        boolean async = false;
+        try {
+            deployed.container.doFilter(request, response, chain);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(deployed);
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                deployed.release();
+            }
+        }
+        return true;
+    }
+
+    private Deployed acquire() {
+        while (true) {
+            Deployed deployed = current;
+            deployed.inFlight.incrementAndGet();
+            if (!deployed.retired) {
+                return deployed;
+            }
+            deployed.release();
+            if (deployed == current) {
+                // Destroyed, not replaced
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        Deployed deployed = current;
+        if (deployed != null) {
+            deployed.retire();
+        }
+    }
+
+    private static class Deployed implements AsyncListener {
+        private final ServletContainer container;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicBoolean destroyed = new AtomicBoolean();
+        private volatile boolean retired;
+
+        private Deployed(ServletContainer container) {
+            this.container = container;
+        }
+
+        void retire() {
+            retired = true;
+            if (inFlight.get() == 0) {
+                destroy();
+            }
+        }
+
+        void release() {
+            if (inFlight.decrementAndGet() == 0 && retired) {
+                destroy();
+            }
+        }
+
+        private void destroy() {
+            if (destroyed.compareAndSet(false, true)) {
+                container.destroy();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
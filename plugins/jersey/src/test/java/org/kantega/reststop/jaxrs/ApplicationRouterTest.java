@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.jaxrs;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class ApplicationRouterTest {
+
+    @Test
+    public void shouldRouteByDecodedSegmentWithoutMatrixParameters() {
+        assertThat(ApplicationRouter.requestSegment("/orders/42"), is("orders"));
+        assertThat(ApplicationRouter.requestSegment("/orders"), is("orders"));
+        assertThat(ApplicationRouter.requestSegment("/orders;v=1/42"), is("orders"));
+        assertThat(ApplicationRouter.requestSegment("/%6Frders/42"), is("orders"));
+        assertThat(ApplicationRouter.requestSegment("/a+b%20c/"), is("a+b c"));
+        assertThat(ApplicationRouter.requestSegment("/bad%zz"), is("bad%zz"));
+        assertThat(ApplicationRouter.requestSegment("/"), is(""));
+    }
+}
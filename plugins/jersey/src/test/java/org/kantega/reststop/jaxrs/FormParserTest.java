@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.jaxrs;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ */
+public class FormParserTest {
+
+    @Test
+    public void shouldDecodeParameters() {
+        Map<String, List<String>> parameters = parse(StandardCharsets.UTF_8, "a=1&b=hello+world&a=2&flag&c=x%3Dy=z");
+
+        assertThat(parameters.get("a"), is(Arrays.asList("1", "2")));
+        assertThat(parameters.get("b"), is(Collections.singletonList("hello world")));
+        assertThat(parameters.get("flag"), is(Collections.singletonList("")));
+        assertThat(parameters.get("c"), is(Collections.singletonList("x=y=z")));
+    }
+
+    @Test
+    public void shouldIgnoreEmptyParameters() {
+        assertThat(parse(StandardCharsets.UTF_8, "&&a=1&&").keySet(), is(Collections.singleton("a")));
+    }
+
+    @Test
+    public void shouldDecodeEscapesSplitAcrossWrites() {
+        assertThat(parse(StandardCharsets.UTF_8, "k", "ey=%", "C", "3%A", "5&x", "=%E2%82", "%AC").get("key"),
+                is(Collections.singletonList("å")));
+        assertThat(parse(StandardCharsets.UTF_8, "x=%", "E2%82", "%AC").get("x"),
+                is(Collections.singletonList("€")));
+    }
+
+    @Test
+    public void shouldKeepMalformedEscapes() {
+        Map<String, List<String>> parameters = parse(StandardCharsets.UTF_8, "a=%zz&b=%Az&c=100%&d=%4");
+
+        assertThat(parameters.get("a"), is(Collections.singletonList("%zz")));
+        assertThat(parameters.get("b"), is(Collections.singletonList("%Az")));
+        assertThat(parameters.get("c"), is(Collections.singletonList("100%")));
+        assertThat(parameters.get("d"), is(Collections.singletonList("%4")));
+    }
+
+    @Test
+    public void shouldDecodeWithCharset() {
+        assertThat(parse(StandardCharsets.ISO_8859_1, "a=%E5").get("a"), is(Collections.singletonList("å")));
+        assertThat(parse(Charset.forName("Shift_JIS"), "a=%82%A0%82", "%A2").get("a"), is(Collections.singletonList("あい")));
+    }
+
+    @Test
+    public void shouldDecodeUnescapedMultibyteCharactersSplitAcrossWrites() {
+        byte[] body = "nøkkel=blåbær".getBytes(StandardCharsets.UTF_8);
+        FormParser parser = new FormParser(StandardCharsets.UTF_8, 10, 100);
+        for (int i = 0; i < body.length; i++) {
+            parser.write(body, i, 1);
+        }
+        parser.finish();
+
+        assertThat(parser.getParameters().get("nøkkel"), is(Collections.singletonList("blåbær")));
+    }
+
+    @Test
+    public void shouldAllowKeysUpToLimit() {
+        FormParser parser = parser(2, 100, "a=1&b=2");
+
+        assertThat(parser.isOverflowed(), is(false));
+        assertThat(parser.getParameters().size(), is(2));
+    }
+
+    @Test
+    public void shouldRejectTooManyKeys() {
+        FormParser parser = parser(2, 100, "a=1&b=2&a=3");
+
+        assertThat(parser.isOverflowed(), is(true));
+        assertRejected(parser);
+    }
+
+    @Test
+    public void shouldAllowSizeUpToLimit() {
+        FormParser parser = parser(10, 7, "a=1&b=2");
+
+        assertThat(parser.getParameters().size(), is(2));
+    }
+
+    @Test
+    public void shouldRejectTooLargeForm() {
+        FormParser parser = parser(10, 6, "a=1&b=2");
+
+        assertThat(parser.isOverflowed(), is(true));
+        assertRejected(parser);
+    }
+
+    private static void assertRejected(FormParser parser) {
+        try {
+            parser.getParameters();
+            fail("Expected overflow");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    private static FormParser parser(int maxKeys, long maxSize, String body) {
+        FormParser parser = new FormParser(StandardCharsets.UTF_8, maxKeys, maxSize);
+        byte[] bytes = body.getBytes(StandardCharsets.US_ASCII);
+        parser.write(bytes, 0, bytes.length);
+        parser.finish();
+        return parser;
+    }
+
+    private static Map<String, List<String>> parse(Charset charset, String... writes) {
+        FormParser parser = new FormParser(charset, 100, 1000);
+        for (String write : writes) {
+            // Pad the chunk to check that offsets are honored
+            byte[] bytes = ("##" + write + "##").getBytes(StandardCharsets.US_ASCII);
+            parser.write(bytes, 2, bytes.length - 4);
+        }
+        parser.finish();
+        return parser.getParameters();
+    }
+}
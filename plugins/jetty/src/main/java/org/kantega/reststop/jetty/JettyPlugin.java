@@ -24,6 +24,7 @@ import org.kantega.reststop.api.Export;
 import org.kantega.reststop.api.Plugin;
 import org.kantega.reststop.api.PluginExport;
 import org.kantega.reststop.servlet.api.ServletBuilder;
+import org.kantega.reststop.servlet.api.FilterTimings;
 import org.kantega.reststop.servlet.api.ServletDeployer;
 import org.kantega.reststop.servlets.ReststopInitializer;
 
@@ -42,11 +43,13 @@ public class JettyPlugin {
     @Export final ServletBuilder servletBuilder;
     @Export final ServletContext servletContext;
     @Export final ServletDeployer servletDeployer;
+    @Export final FilterTimings filterTimings;
 
     private final Server server;
 
     public JettyPlugin(@Config(defaultValue = "8080") int jettyPort,
                        @Config(defaultValue = "false") boolean jettyEnableXForwarded,
+                       @Config(defaultValue = "false") boolean filterTimings,
                        Collection<PluginExport<ServletContextCustomizer>> servletContextCustomizers)throws Exception {
 
         server = new Server();
@@ -54,10 +57,13 @@ public class JettyPlugin {
         ServletContextHandler handler = new ServletContextHandler(ServletContextHandler.SESSIONS);
 
 
-        ReststopInitializer.PluginDelegatingFilter filter = new ReststopInitializer.PluginDelegatingFilter();
+        ReststopInitializer.PluginDelegatingFilter filter = new ReststopInitializer.PluginDelegatingFilter(filterTimings);
 
         servletDeployer = filter;
-        handler.addFilter(new FilterHolder(filter), "/*", EnumSet.of(DispatcherType.REQUEST));
+        this.filterTimings = filter.getFilterTimings();
+        FilterHolder filterHolder = new FilterHolder(filter);
+        filterHolder.setAsyncSupported(true);
+        handler.addFilter(filterHolder, "/*", EnumSet.of(DispatcherType.REQUEST));
         server.setHandler(handler);
 
         Thread thread = Thread.currentThread();
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.kantega.reststop.api.Plugin;
+import org.kantega.reststop.classloaderutils.DelegateClassLoader;
+import org.kantega.reststop.classloaderutils.PluginClassLoader;
+import org.kantega.reststop.classloaderutils.ResourceHidingClassLoader;
+
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.function.ToLongFunction;
+
+/**
+ * Publishes how often plugin class loaders, and the class loaders delegating to their dependencies, answer class and
+ * resource lookups from their cache of missing names.
+ */
+@Plugin
+public class ClassLoaderMetricsPlugin {
+
+    private static final String PREFIX = "reststop.classloaders.negativeLookup";
+
+    private final MetricRegistry metricRegistry;
+
+    public ClassLoaderMetricsPlugin(MetricRegistry metricRegistry, Collection<PluginClassLoader> pluginClassLoaders) {
+        this.metricRegistry = metricRegistry;
+
+        metricRegistry.remove(PREFIX + ".hits");
+        metricRegistry.remove(PREFIX + ".misses");
+        metricRegistry.register(PREFIX + ".hits", (Gauge<Long>) () -> sum(pluginClassLoaders,
+                PluginClassLoader::getNegativeLookupHits, DelegateClassLoader::getNegativeLookupHits));
+        metricRegistry.register(PREFIX + ".misses", (Gauge<Long>) () -> sum(pluginClassLoaders,
+                PluginClassLoader::getNegativeLookupMisses, DelegateClassLoader::getNegativeLookupMisses));
+    }
+
+    private static long sum(Collection<PluginClassLoader> pluginClassLoaders,
+                            ToLongFunction<PluginClassLoader> pluginCount,
+                            ToLongFunction<DelegateClassLoader> delegateCount) {
+        long sum = 0;
+        for (PluginClassLoader pluginClassLoader : pluginClassLoaders) {
+            sum += pluginCount.applyAsLong(pluginClassLoader);
+            ClassLoader parent = pluginClassLoader.getParent();
+            if (parent instanceof ResourceHidingClassLoader) {
+                parent = parent.getParent();
+            }
+            if (parent instanceof DelegateClassLoader) {
+                sum += delegateCount.applyAsLong((DelegateClassLoader) parent);
+            }
+        }
+        return sum;
+    }
+
+    @PreDestroy
+    public void stop() {
+        metricRegistry.remove(PREFIX + ".hits");
+        metricRegistry.remove(PREFIX + ".misses");
+    }
+}
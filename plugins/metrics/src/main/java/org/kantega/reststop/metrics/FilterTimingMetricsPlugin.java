@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.kantega.reststop.api.Plugin;
+import org.kantega.reststop.servlet.api.FilterTimings;
+
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Publishes the time spent in the filters of each plugin and filter phase, in microseconds, when filter timing is enabled.
+ */
+@Plugin
+public class FilterTimingMetricsPlugin {
+
+    private static final String PREFIX = "reststop.filters";
+
+    private final MetricRegistry metricRegistry;
+    private final Collection<FilterTimings> filterTimings;
+    private final Consumer<FilterTimings.Timing> listener = this::register;
+
+    public FilterTimingMetricsPlugin(MetricRegistry metricRegistry, Collection<FilterTimings> filterTimings) {
+        this.metricRegistry = metricRegistry;
+        this.filterTimings = filterTimings;
+
+        metricRegistry.removeMatching((name, metric) -> name.startsWith(PREFIX + "."));
+        for (FilterTimings timings : filterTimings) {
+            if (timings.isEnabled()) {
+                timings.addListener(listener);
+            }
+        }
+    }
+
+    private void register(FilterTimings.Timing timing) {
+        String name = MetricRegistry.name(PREFIX, timing.getPlugin(), timing.getPhase().name());
+        metricRegistry.register(name + ".count", (Gauge<Long>) timing::getCount);
+        for (double quantile : new double[]{0.5, 0.99}) {
+            String suffix = ".p" + (int) (quantile * 100);
+            metricRegistry.register(name + ".self" + suffix, (Gauge<Long>) () -> timing.getSelfNanos(quantile) / 1000);
+            metricRegistry.register(name + ".inclusive" + suffix, (Gauge<Long>) () -> timing.getInclusiveNanos(quantile) / 1000);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        for (FilterTimings timings : filterTimings) {
+            timings.removeListener(listener);
+        }
+        metricRegistry.removeMatching((name, metric) -> name.startsWith(PREFIX + "."));
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kantega.reststop.responsecache;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Opts requests in to response caching. Export an implementation from a plugin to let the responses to its GET
+ * requests be shared between clients. Responses are still only stored when their Cache-Control allows a shared
+ * cache to store them for a while, as with max-age or s-maxage.
+ */
+public interface CachePolicy {
+    boolean isCacheable(HttpServletRequest request);
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kantega.reststop.responsecache;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A stored response and the request header values it was selected by.
+ */
+class CachedResponse {
+
+    private final String key;
+    private final int status;
+    private final List<String[]> headers;
+    private final byte[] body;
+    private final String[] vary;
+    private final long stored;
+    private final long expires;
+
+    CachedResponse(String key, int status, List<String[]> headers, byte[] body, String[] vary, long stored, long expires) {
+        this.key = key;
+        this.status = status;
+        this.headers = headers;
+        this.body = body;
+        this.vary = vary;
+        this.stored = stored;
+        this.expires = expires;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    String[] getVary() {
+        return vary;
+    }
+
+    boolean isFresh(long now) {
+        return now < expires;
+    }
+
+    long getSize() {
+        return body.length + headers.size() * 64L;
+    }
+
+    void writeTo(HttpServletResponse resp, long now) throws IOException {
+        resp.setStatus(status);
+        String previous = null;
+        for (String[] header : headers) {
+            if (header[0].equalsIgnoreCase(previous)) {
+                resp.addHeader(header[0], header[1]);
+            } else {
+                resp.setHeader(header[0], header[1]);
+            }
+            previous = header[0];
+        }
+        resp.setHeader("Age", String.valueOf(Math.max(0, (now - stored) / 1000)));
+        resp.setContentLength(body.length);
+        resp.getOutputStream().write(body);
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kantega.reststop.responsecache;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves GET requests opted in by a {@link CachePolicy} from memory while the stored response is fresh.
+ * Concurrent misses for the same resource are coalesced, so only one of them runs the rest of the filter chain
+ * and the others are answered with its response, or run the chain themselves if it takes longer than the maximum wait.
+ */
+public class ResponseCacheFilter implements Filter {
+
+    private static final Set<Integer> STOREABLE_STATUS = new HashSet<>(Arrays.asList(200, 203, 300, 301, 404, 410));
+
+    private static final Set<String> UNSTORED_HEADERS = new HashSet<>(Arrays.asList(
+            "content-length", "transfer-encoding", "connection", "keep-alive", "date", "age"));
+
+    private final Collection<CachePolicy> policies;
+    private final long maxBytes;
+    private final int maxEntryBytes;
+    private final long maxWaitMillis;
+
+    private final Map<String, CompletableFuture<CachedResponse>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Slot> entries = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();
+
+    public ResponseCacheFilter(Collection<CachePolicy> policies, long maxBytes, long maxWaitMillis) {
+        this.policies = policies;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = (int) Math.min(Integer.MAX_VALUE, maxBytes / 8);
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest req = (HttpServletRequest) request;
+        HttpServletResponse resp = (HttpServletResponse) response;
+
+        if (!isCacheable(req)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String baseKey = req.getQueryString() == null ? req.getRequestURI() : req.getRequestURI() + "?" + req.getQueryString();
+        long now = System.currentTimeMillis();
+        Slot slot = get(baseKey, now);
+        String key = slot != null && slot.response == null ? key(baseKey, slot.vary, req) : baseKey;
+        if (key != baseKey) {
+            slot = get(key, now);
+        }
+        if (slot != null) {
+            slot.response.writeTo(resp, now);
+            return;
+        }
+
+        CompletableFuture<CachedResponse> leader = new CompletableFuture<>();
+        CompletableFuture<CachedResponse> existing = inFlight.putIfAbsent(key, leader);
+        if (existing != null) {
+            CachedResponse shared = await(existing);
+            if (shared != null && shared.getKey().equals(key(baseKey, shared.getVary(), req))) {
+                now = System.currentTimeMillis();
+                if (shared.isFresh(now)) {
+                    shared.writeTo(resp, now);
+                    return;
+                }
+            }
+            chain.doFilter(request, response);
+            return;
+        }
+
+        CapturingResponse capturing = new CapturingResponse(resp, maxEntryBytes);
+        boolean handled = false;
+        try {
+            chain.doFilter(request, capturing);
+            handled = true;
+        } finally {
+            if (!handled) {
+                inFlight.remove(key, leader);
+                leader.complete(null);
+            }
+        }
+
+        if (req.isAsyncStarted()) {
+            // Stored when the response is complete, waiting requests are answered then
+            req.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    complete(key, leader, baseKey, req, resp, capturing);
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                    event.getAsyncContext().addListener(this);
+                }
+            });
+        } else {
+            complete(key, leader, baseKey, req, resp, capturing);
+        }
+    }
+
+    private void complete(String key, CompletableFuture<CachedResponse> leader, String baseKey, HttpServletRequest req, HttpServletResponse resp, CapturingResponse capturing) {
+        CachedResponse stored = null;
+        try {
+            capturing.finish();
+            stored = store(baseKey, req, resp, capturing.getBody());
+        } finally {
+            inFlight.remove(key, leader);
+            leader.complete(stored);
+        }
+    }
+
+    private boolean isCacheable(HttpServletRequest req) {
+        if (!"GET".equals(req.getMethod())
+                || req.getHeader("Range") != null
+                || req.getHeader("If-None-Match") != null
+                || req.getHeader("If-Modified-Since") != null
+                || req.getHeader("If-Match") != null
+                || req.getHeader("If-Unmodified-Since") != null) {
+            return false;
+        }
+        String cacheControl = req.getHeader("Cache-Control");
+        if (cacheControl != null) {
+            Map<String, String> directives = directives(Collections.singletonList(cacheControl));
+            if (directives.containsKey("no-cache") || directives.containsKey("no-store")) {
+                return false;
+            }
+        }
+        for (CachePolicy policy : policies) {
+            if (policy.isCacheable(req)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private CachedResponse await(CompletableFuture<CachedResponse> future) throws IOException {
+        try {
+            return future.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    private CachedResponse store(String baseKey, HttpServletRequest req, HttpServletResponse resp, byte[] body) {
+        if (body == null || !STOREABLE_STATUS.contains(resp.getStatus()) || resp.getHeader("Set-Cookie") != null) {
+            return null;
+        }
+
+        Map<String, String> cacheControl = directives(resp.getHeaders("Cache-Control"));
+        if (cacheControl.containsKey("no-store") || cacheControl.containsKey("no-cache") || cacheControl.containsKey("private")) {
+            return null;
+        }
+        long maxAge = seconds(cacheControl.containsKey("s-maxage") ? cacheControl.get("s-maxage") : cacheControl.get("max-age"));
+        if (maxAge <= 0) {
+            return null;
+        }
+        if (req.getHeader("Authorization") != null && !cacheControl.containsKey("public") && !cacheControl.containsKey("s-maxage")) {
+            return null;
+        }
+
+        List<String> varyNames = new ArrayList<>();
+        for (String value : resp.getHeaders("Vary")) {
+            for (String name : value.split(",")) {
+                name = name.trim().toLowerCase(Locale.ROOT);
+                if (name.equals("*")) {
+                    return null;
+                }
+                if (!name.isEmpty() && !varyNames.contains(name)) {
+                    varyNames.add(name);
+                }
+            }
+        }
+        Collections.sort(varyNames);
+        String[] vary = varyNames.toArray(new String[0]);
+
+        List<String[]> headers = new ArrayList<>();
+        boolean contentType = false;
+        for (String name : new LinkedHashSet<>(resp.getHeaderNames())) {
+            String lowerCase = name.toLowerCase(Locale.ROOT);
+            if (!UNSTORED_HEADERS.contains(lowerCase)) {
+                contentType |= lowerCase.equals("content-type");
+                for (String value : resp.getHeaders(name)) {
+                    headers.add(new String[]{name, value});
+                }
+            }
+        }
+        if (!contentType && resp.getContentType() != null) {
+            headers.add(new String[]{"Content-Type", resp.getContentType()});
+        }
+
+        long now = System.currentTimeMillis();
+        String key = vary.length == 0 ? baseKey : key(baseKey, vary, req);
+        CachedResponse cached = new CachedResponse(key, resp.getStatus(), headers, body, vary, now, now + maxAge * 1000);
+        if (vary.length != 0) {
+            // The Vary names are kept under the base key, so they are evicted like any other entry
+            put(baseKey, new Slot(null, vary, clock.incrementAndGet()));
+        }
+        put(key, new Slot(cached, vary, clock.incrementAndGet()));
+        return cached;
+    }
+
+    private Slot get(String key, long now) {
+        Slot slot = entries.get(key);
+        if (slot == null) {
+            return null;
+        }
+        if (slot.response != null && !slot.response.isFresh(now)) {
+            if (entries.remove(key, slot)) {
+                bytes.addAndGet(-slot.size);
+            }
+            return null;
+        }
+        slot.tick = clock.incrementAndGet();
+        return slot;
+    }
+
+    private void put(String key, Slot slot) {
+        Slot previous = entries.put(key, slot);
+        if (bytes.addAndGet(previous == null ? slot.size : slot.size - previous.size) > maxBytes) {
+            evict();
+        }
+    }
+
+    private synchronized void evict() {
+        long target = maxBytes - maxBytes / 10;
+        if (bytes.get() <= target) {
+            return;
+        }
+        List<Map.Entry<String, Slot>> eldest = new ArrayList<>(entries.entrySet());
+        eldest.sort(Comparator.comparingLong(e -> e.getValue().tick));
+        for (Map.Entry<String, Slot> entry : eldest) {
+            if (bytes.get() <= target) {
+                break;
+            }
+            if (entries.remove(entry.getKey(), entry.getValue())) {
+                bytes.addAndGet(-entry.getValue().size);
+            }
+        }
+    }
+
+    private static String key(String baseKey, String[] vary, HttpServletRequest req) {
+        StringBuilder key = new StringBuilder(baseKey);
+        for (String name : vary) {
+            key.append('\n').append(name).append(':');
+            Enumeration<String> values = req.getHeaders(name);
+            while (values != null && values.hasMoreElements()) {
+                key.append(values.nextElement()).append(',');
+            }
+        }
+        return key.toString();
+    }
+
+    private static Map<String, String> directives(Collection<String> headers) {
+        Map<String, String> directives = new HashMap<>();
+        for (String header : headers) {
+            for (String directive : header.split(",")) {
+                int eq = directive.indexOf('=');
+                String name = (eq < 0 ? directive : directive.substring(0, eq)).trim().toLowerCase(Locale.ROOT);
+                String value = eq < 0 ? "" : directive.substring(eq + 1).trim();
+                if (!name.isEmpty()) {
+                    directives.putIfAbsent(name, value.replace("\"", ""));
+                }
+            }
+        }
+        return directives;
+    }
+
+    private static long seconds(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void destroy() {
+
+    }
+
+    /**
+     * A stored response, or the Vary header names of the responses stored for a resource.
+     */
+    private static final class Slot {
+        private final CachedResponse response;
+        private final String[] vary;
+        private final long size;
+        private volatile long tick;
+
+        private Slot(CachedResponse response, String[] vary, long tick) {
+            this.response = response;
+            this.vary = vary;
+            this.tick = tick;
+            long size = response == null ? 64 : response.getSize();
+            for (String name : vary) {
+                size += name.length() * 2;
+            }
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kantega.reststop.responsecache;
+
+import org.kantega.reststop.api.Config;
+import org.kantega.reststop.api.Export;
+import org.kantega.reststop.api.Plugin;
+import org.kantega.reststop.servlet.api.FilterPhase;
+import org.kantega.reststop.servlet.api.ServletBuilder;
+
+import javax.servlet.Filter;
+import java.util.Collection;
+
+/**
+ *
+ */
+@Plugin
+public class ResponseCachePlugin {
+
+    @Export
+    private final Filter responseCacheFilter;
+
+    public ResponseCachePlugin(ServletBuilder servletBuilder,
+                               Collection<CachePolicy> cachePolicies,
+                               @Config(defaultValue = "67108864") long responseCacheSize,
+                               @Config(defaultValue = "10000") long responseCacheMaxWaitMillis) {
+
+        responseCacheFilter = servletBuilder.filter(new ResponseCacheFilter(cachePolicies, responseCacheSize, responseCacheMaxWaitMillis), FilterPhase.PRE_USER, "/*");
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kantega.reststop.security;
+
+/**
+ * Checks Basic authentication credentials. Export an implementation from a plugin to replace the default, which
+ * accepts any user whose password equals the user name. Verified credentials are cached by {@link BasicAuthFilter}
+ * for a while, so implementations may be slow.
+ */
+public interface Authenticator {
+
+    /**
+     * @return the authenticated user, or null if the credentials are not valid
+     */
+    AuthenticatedUser authenticate(String username, String password) throws Exception;
+}
@@ -20,14 +20,33 @@ import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
-import javax.xml.bind.DatatypeConverter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
  */
 public class BasicAuthFilter implements Filter {
+
+    private static final String BASIC = "Basic ";
+
+    private final Collection<Authenticator> authenticators;
+    private final CredentialCache cache;
+
+    public BasicAuthFilter() {
+        this(Collections.emptyList(), new CredentialCache(0, TimeUnit.SECONDS, 0));
+    }
+
+    BasicAuthFilter(Collection<Authenticator> authenticators, CredentialCache cache) {
+        this.authenticators = authenticators;
+        this.cache = cache;
+    }
+
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
 
@@ -40,24 +59,33 @@ public class BasicAuthFilter implements Filter {
 
         String auth = req.getHeader("Authorization");
 
-        if(auth != null) {
+        if(auth != null && auth.regionMatches(true, 0, BASIC, 0, BASIC.length())) {
+
+            String credentials = auth.substring(BASIC.length()).trim();
+            AuthenticatedUser user;
+            try {
+                user = cache.get(credentials, () -> authenticate(credentials));
+            } catch (IOException | ServletException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ServletException(e);
+            }
 
-            final String[] usernameAndPassword = new String(DatatypeConverter.parseBase64Binary(auth.substring("Basic ".length())), "utf-8").split(":");
-            if(usernameAndPassword[0].equals(usernameAndPassword[1])) {
+            if(user != null) {
                 filterChain.doFilter(new HttpServletRequestWrapper(req) {
                     @Override
                     public String getRemoteUser() {
-                        return usernameAndPassword[0];
+                        return user.getName();
                     }
 
                     @Override
                     public Principal getUserPrincipal() {
-                        return () -> usernameAndPassword[0];
+                        return user;
                     }
 
                     @Override
                     public boolean isUserInRole(String role) {
-                        return "manager".equals(role);
+                        return user.isUserInRole(role);
                     }
                 }, servletResponse);
 
@@ -71,6 +99,32 @@ public class BasicAuthFilter implements Filter {
 
     }
 
+    private AuthenticatedUser authenticate(String credentials) throws Exception {
+        String usernameAndPassword;
+        try {
+            usernameAndPassword = new String(Base64.getDecoder().decode(credentials), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        int colon = usernameAndPassword.indexOf(':');
+        if(colon == -1) {
+            return null;
+        }
+        String username = usernameAndPassword.substring(0, colon);
+        String password = usernameAndPassword.substring(colon + 1);
+
+        if(authenticators.isEmpty()) {
+            return username.equals(password) ? new AuthenticatedUser(username, Collections.singleton("manager")) : null;
+        }
+        for (Authenticator authenticator : authenticators) {
+            AuthenticatedUser user = authenticator.authenticate(username, password);
+            if(user != null) {
+                return user;
+            }
+        }
+        return null;
+    }
+
     @Override
     public void destroy() {
 
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kantega.reststop.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Successfully verified credentials, kept for a limited time by a salted digest of the Authorization header value
+ * so that passwords are not held in memory. Concurrent verifications of the same credentials share one call to the
+ * authenticator.
+ */
+class CredentialCache {
+
+    private final long ttlNanos;
+    private final int maxSize;
+    private final byte[] salt = new byte[16];
+
+    private final ConcurrentHashMap<String, Entry> verified = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<AuthenticatedUser>> verifying = new ConcurrentHashMap<>();
+
+    CredentialCache(long ttl, TimeUnit unit, int maxSize) {
+        this.ttlNanos = unit.toNanos(ttl);
+        this.maxSize = maxSize;
+        new SecureRandom().nextBytes(salt);
+    }
+
+    interface Verification {
+        AuthenticatedUser verify() throws Exception;
+    }
+
+    /**
+     * @param credentials the credentials part of the Authorization header
+     * @return the cached user, otherwise the result of the verification, which isn't cached unless it returned a user
+     */
+    AuthenticatedUser get(String credentials, Verification verification) throws Exception {
+        if (ttlNanos <= 0 || maxSize <= 0) {
+            return verification.verify();
+        }
+
+        String key = digest(credentials);
+        Entry entry = verified.get(key);
+        if (entry != null) {
+            if (System.nanoTime() - entry.expires < 0) {
+                return entry.user;
+            }
+            verified.remove(key, entry);
+        }
+
+        CompletableFuture<AuthenticatedUser> flight = new CompletableFuture<>();
+        CompletableFuture<AuthenticatedUser> existing = verifying.putIfAbsent(key, flight);
+        if (existing != null) {
+            try {
+                return existing.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+
+        try {
+            AuthenticatedUser user = verification.verify();
+            if (user != null) {
+                put(key, new Entry(user, System.nanoTime() + ttlNanos));
+            }
+            flight.complete(user);
+            return user;
+        } catch (Exception | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            verifying.remove(key, flight);
+        }
+    }
+
+    /**
+     * Adds the entry, first removing expired entries if the cache is full, and then the tenth of the entries which
+     * expire first, that is were verified longest ago, if it is still full.
+     */
+    private synchronized void put(String key, Entry entry) {
+        if (verified.size() >= maxSize) {
+            long now = System.nanoTime();
+            verified.values().removeIf(e -> now - e.expires >= 0);
+            int excess = verified.size() - maxSize + 1;
+            if (excess > 0) {
+                List<Map.Entry<String, Entry>> oldest = new ArrayList<>(verified.entrySet());
+                oldest.sort((a, b) -> Long.compare(a.getValue().expires - now, b.getValue().expires - now));
+                for (Map.Entry<String, Entry> evicted : oldest.subList(0, Math.min(oldest.size(), Math.max(excess, maxSize / 10)))) {
+                    verified.remove(evicted.getKey(), evicted.getValue());
+                }
+            }
+        }
+        verified.put(key, entry);
+    }
+
+    private String digest(String credentials) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+            return Base64.getEncoder().encodeToString(digest.digest(credentials.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Entry {
+        private final AuthenticatedUser user;
+        private final long expires;
+
+        private Entry(AuthenticatedUser user, long expires) {
+            this.user = user;
+            this.expires = expires;
+        }
+    }
+}
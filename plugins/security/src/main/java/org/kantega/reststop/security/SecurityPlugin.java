@@ -17,6 +17,7 @@
 package org.kantega.reststop.security;
 
 import org.glassfish.jersey.server.filter.RolesAllowedDynamicFeature;
+import org.kantega.reststop.api.Config;
 import org.kantega.reststop.api.Export;
 import org.kantega.reststop.servlet.api.FilterPhase;
 import org.kantega.reststop.api.Plugin;
@@ -25,6 +26,8 @@ import org.kantega.reststop.jaxrsapi.ApplicationBuilder;
 
 import javax.servlet.Filter;
 import javax.ws.rs.core.Application;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -37,8 +40,12 @@ public class SecurityPlugin  {
     @Export
     private final Filter basicAuthFilter;
 
-    public SecurityPlugin(ServletBuilder servletBuilder, ApplicationBuilder applicationBuilder) {
-        basicAuthFilter = servletBuilder.filter(new BasicAuthFilter(), FilterPhase.AUTHENTICATION, "/*");
+    public SecurityPlugin(ServletBuilder servletBuilder, ApplicationBuilder applicationBuilder,
+                          Collection<Authenticator> authenticators,
+                          @Config(defaultValue = "300") int authenticationCacheSeconds,
+                          @Config(defaultValue = "10000") int authenticationCacheSize) {
+        CredentialCache cache = new CredentialCache(authenticationCacheSeconds, TimeUnit.SECONDS, authenticationCacheSize);
+        basicAuthFilter = servletBuilder.filter(new BasicAuthFilter(authenticators, cache), FilterPhase.AUTHENTICATION, "/*");
         securityApp = applicationBuilder.application().resource(RolesAllowedDynamicFeature.class).build();
     }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.security;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ */
+public class CredentialCacheTest {
+
+    private final AtomicInteger verifications = new AtomicInteger();
+
+    @Test
+    public void shouldCacheVerifiedUser() throws Exception {
+        CredentialCache cache = new CredentialCache(1, TimeUnit.MINUTES, 10);
+
+        AuthenticatedUser first = cache.get("am9lOmpvZQ==", () -> verify("joe"));
+        AuthenticatedUser second = cache.get("am9lOmpvZQ==", () -> verify("joe"));
+
+        assertThat(second, sameInstance(first));
+        assertThat(verifications.get(), is(1));
+    }
+
+    @Test
+    public void shouldNotCacheFailedVerifications() throws Exception {
+        CredentialCache cache = new CredentialCache(1, TimeUnit.MINUTES, 10);
+
+        cache.get("bad", () -> verify(null));
+        cache.get("bad", () -> verify(null));
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get("failing", () -> {
+                    verifications.incrementAndGet();
+                    throw new IllegalStateException("Realm unavailable");
+                });
+                fail("Expected exception");
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+        }
+
+        assertThat(verifications.get(), is(4));
+    }
+
+    @Test
+    public void shouldVerifyAgainWhenExpired() throws Exception {
+        CredentialCache cache = new CredentialCache(50, TimeUnit.MILLISECONDS, 10);
+
+        cache.get("joe", () -> verify("joe"));
+        Thread.sleep(100);
+        cache.get("joe", () -> verify("joe"));
+
+        assertThat(verifications.get(), is(2));
+    }
+
+    @Test
+    public void shouldNotCacheWhenDisabled() throws Exception {
+        CredentialCache cache = new CredentialCache(0, TimeUnit.MINUTES, 10);
+
+        cache.get("joe", () -> verify("joe"));
+        cache.get("joe", () -> verify("joe"));
+
+        assertThat(verifications.get(), is(2));
+    }
+
+    @Test
+    public void shouldShareConcurrentVerification() throws Exception {
+        CredentialCache cache = new CredentialCache(1, TimeUnit.MINUTES, 10);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<AuthenticatedUser>> users = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                users.add(executor.submit(() -> cache.get("joe", () -> {
+                    release.await();
+                    return verify("joe");
+                })));
+            }
+            Thread.sleep(200);
+            release.countDown();
+
+            AuthenticatedUser first = users.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<AuthenticatedUser> user : users) {
+                assertThat(user.get(5, TimeUnit.SECONDS), sameInstance(first));
+            }
+            assertThat(verifications.get(), is(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldEvictEntriesVerifiedLongestAgoWhenFull() throws Exception {
+        CredentialCache cache = new CredentialCache(1, TimeUnit.MINUTES, 10);
+        for (int i = 0; i <= 10; i++) {
+            String name = "user" + i;
+            cache.get(name, () -> verify(name));
+        }
+
+        for (int i = 1; i <= 10; i++) {
+            cache.get("user" + i, () -> {
+                throw new AssertionError("Should still be cached");
+            });
+        }
+        cache.get("user0", () -> verify("user0"));
+
+        assertThat(verifications.get(), is(12));
+    }
+
+    private AuthenticatedUser verify(String name) {
+        verifications.incrementAndGet();
+        return name == null ? null : new AuthenticatedUser(name, Collections.singleton("user"));
+    }
+}
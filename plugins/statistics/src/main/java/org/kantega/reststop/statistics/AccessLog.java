@@ -0,0 +1,273 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kantega.reststop.statistics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Access log taking records from request threads without locking or blocking. Records are written into a bounded ring
+ * of preallocated slots and written as JSON lines by a background thread, which parks when the ring is empty until a
+ * request thread wakes it. When the ring is full, or a record can't be written, records are dropped and counted.
+ */
+class AccessLog {
+
+    private static final Logger LOG = LoggerFactory.getLogger("STATISTICS");
+
+    private static final long RETRY_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Record[] records;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    private final LongAdder dropped = new LongAdder();
+    private long reportedDropped;
+
+    private final RollingFileWriter file;
+    private final StringBuilder line = new StringBuilder(256);
+    private final Thread writer;
+    private volatile boolean idle;
+    private volatile boolean running = true;
+    private long failures;
+
+    /**
+     * @param capacity number of records buffered, rounded up to a power of two
+     * @param file     where to write, or null to write through the STATISTICS logger
+     */
+    AccessLog(int capacity, RollingFileWriter file) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        records = new Record[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            records[i] = new Record();
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+        this.file = file;
+
+        writer = new Thread(this::run, "reststop-access-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    void log(long timestamp, String method, String uri, String remoteUser, int status, long latencyNanos) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    Record record = records[index];
+                    record.timestamp = timestamp;
+                    record.method = method;
+                    record.uri = uri;
+                    record.remoteUser = remoteUser;
+                    record.status = status;
+                    record.latencyNanos = latencyNanos;
+                    // A volatile write, so the writer either sees the record or is seen to be idle
+                    sequences.set(index, position + 1);
+                    if (idle) {
+                        LockSupport.unpark(writer);
+                    }
+                    return;
+                }
+                position = tail.get();
+            } else if (sequence < position) {
+                dropped.increment();
+                return;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stops the background thread after writing what is buffered.
+     */
+    void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            boolean stopping = !running;
+            int written = 0;
+            try {
+                written = drain();
+                reportDropped();
+                if (written > 0 && file != null) {
+                    file.flush();
+                }
+                if (failures > 0) {
+                    LOG.warn("Access log writing to " + file + " again after " + failures + " failed attempts");
+                    failures = 0;
+                }
+            } catch (IOException e) {
+                recover(e);
+            }
+            if (stopping) {
+                break;
+            }
+            if (written == 0) {
+                idle = true;
+                if (!hasRecord() && running) {
+                    LockSupport.park(this);
+                }
+                idle = false;
+            }
+        }
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                LOG.error("Failed closing " + file, e);
+            }
+        }
+    }
+
+    private boolean hasRecord() {
+        return sequences.get((int) (head & mask)) == head + 1;
+    }
+
+    /**
+     * Reopens the file after a failed write, waiting a while before the next attempt if that fails too. Records
+     * arriving in the meantime are dropped when the ring is full, and reported when writing succeeds again.
+     */
+    private void recover(IOException e) {
+        failures++;
+        if (failures == 1) {
+            LOG.error("Failed writing access log to " + file + ", reopening it", e);
+        }
+        try {
+            file.reopen();
+        } catch (IOException reopenFailure) {
+            if (failures == 1) {
+                LOG.error("Failed reopening " + file, reopenFailure);
+            }
+            if (running) {
+                LockSupport.parkNanos(this, RETRY_PARK_NANOS);
+            }
+        }
+    }
+
+    private int drain() throws IOException {
+        int written = 0;
+        while (true) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                return written;
+            }
+            Record record = records[index];
+            format(record);
+            record.method = record.uri = record.remoteUser = null;
+            sequences.lazySet(index, head + records.length);
+            head++;
+            try {
+                write();
+            } catch (IOException e) {
+                dropped.increment();
+                throw e;
+            }
+            written++;
+        }
+    }
+
+    private void reportDropped() throws IOException {
+        long total = dropped.sum();
+        if (total != reportedDropped) {
+            line.setLength(0);
+            line.append("{\"time\":\"").append(Instant.now()).append("\",\"dropped\":").append(total - reportedDropped).append('}');
+            write();
+            reportedDropped = total;
+        }
+    }
+
+    private void format(Record record) {
+        line.setLength(0);
+        line.append("{\"time\":\"").append(Instant.ofEpochMilli(record.timestamp)).append('"');
+        line.append(",\"method\":");
+        appendString(record.method);
+        line.append(",\"uri\":");
+        appendString(record.uri);
+        if (record.remoteUser != null) {
+            line.append(",\"user\":");
+            appendString(record.remoteUser);
+        }
+        line.append(",\"status\":").append(record.status);
+        line.append(",\"micros\":").append(TimeUnit.NANOSECONDS.toMicros(record.latencyNanos));
+        line.append('}');
+    }
+
+    private void appendString(String value) {
+        appendString(line, value);
+    }
+
+    static void appendString(StringBuilder line, String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    private void write() throws IOException {
+        if (file != null) {
+            file.writeLine(line);
+        } else {
+            LOG.info(line.toString());
+        }
+    }
+
+    private static class Record {
+        long timestamp;
+        String method;
+        String uri;
+        String remoteUser;
+        int status;
+        long latencyNanos;
+    }
+}
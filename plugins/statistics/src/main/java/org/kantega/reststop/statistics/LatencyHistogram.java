@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kantega.reststop.statistics;
+
+import org.kantega.reststop.servlet.api.Histogram;
+
+/**
+ * Latency {@link Histogram} in microseconds, able to read the counts recorded over a window by subtracting a snapshot
+ * taken on an earlier tick.
+ */
+class LatencyHistogram {
+
+    /**
+     * Values at or above this many microseconds, about 9 minutes, are counted in the last bucket.
+     */
+    static final long MAX_VALUE = 1L << 29;
+
+    /**
+     * Snapshots kept, one per tick, enough to look back over the longest window.
+     */
+    private final long[][] snapshots;
+    private long ticks;
+
+    private final Histogram histogram = new Histogram(MAX_VALUE);
+
+    LatencyHistogram(int windowTicks) {
+        snapshots = new long[windowTicks + 1][];
+    }
+
+    void record(long micros) {
+        histogram.record(micros);
+    }
+
+    /**
+     * Remembers the current counts as the start of the next tick.
+     */
+    synchronized void tick() {
+        snapshots[(int) (ticks++ % snapshots.length)] = sparse(histogram.getCounts());
+    }
+
+    /**
+     * @return the counts recorded over at least the given number of ticks, and less than one more, or since the start
+     * if there weren't as many ticks
+     */
+    synchronized long[] since(int ticksAgo) {
+        long[] counts = histogram.getCounts();
+        if (ticksAgo < ticks && ticksAgo < snapshots.length) {
+            long[] start = snapshots[(int) ((ticks - 1 - ticksAgo) % snapshots.length)];
+            for (int i = 0; i < start.length; i += 2) {
+                counts[(int) start[i]] -= start[i + 1];
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Index and count pairs of the non-empty buckets, as most of them are.
+     */
+    private static long[] sparse(long[] counts) {
+        int used = 0;
+        for (long count : counts) {
+            if (count != 0) {
+                used++;
+            }
+        }
+        long[] sparse = new long[used * 2];
+        int j = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                sparse[j++] = i;
+                sparse[j++] = counts[i];
+            }
+        }
+        return sparse;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kantega.reststop.statistics;
+
+import org.kantega.reststop.servlet.api.Histogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Latency histograms by route, status class and whether the user was authenticated, readable over the last 1, 5 and 15
+ * minutes to the minute.
+ */
+class LatencyRecorder {
+
+    static final String OTHER_ROUTE = "other";
+
+    static final int[] WINDOW_MINUTES = {1, 5, 15};
+
+    static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx", "other"};
+
+    static final String[] USERS = {"anonymous", "authenticated"};
+
+    private final int maxRoutes;
+    private final Map<String, AtomicReferenceArray<LatencyHistogram>> routes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService ticker;
+
+    LatencyRecorder(int maxRoutes) {
+        this.maxRoutes = maxRoutes;
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "reststop-latency-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, 1, 1, TimeUnit.MINUTES);
+    }
+
+    void record(String route, int status, boolean authenticated, long latencyNanos) {
+        AtomicReferenceArray<LatencyHistogram> histograms = routes.get(route);
+        if (histograms == null) {
+            if (routes.size() >= maxRoutes) {
+                route = OTHER_ROUTE;
+            }
+            histograms = routes.computeIfAbsent(route, r -> new AtomicReferenceArray<>(STATUS_CLASSES.length * USERS.length));
+        }
+
+        int statusClass = status >= 100 && status < 600 ? status / 100 - 1 : STATUS_CLASSES.length - 1;
+        int index = statusClass * USERS.length + (authenticated ? 1 : 0);
+        LatencyHistogram histogram = histograms.get(index);
+        if (histogram == null) {
+            histograms.compareAndSet(index, null, new LatencyHistogram(WINDOW_MINUTES[WINDOW_MINUTES.length - 1]));
+            histogram = histograms.get(index);
+        }
+        histogram.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+    }
+
+    private void tick() {
+        for (AtomicReferenceArray<LatencyHistogram> histograms : routes.values()) {
+            for (int i = 0; i < histograms.length(); i++) {
+                LatencyHistogram histogram = histograms.get(i);
+                if (histogram != null) {
+                    histogram.tick();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the count, p50, p90, p99, p99.9 and max latency in microseconds of each window for every recorded key.
+     */
+    void writeJson(StringBuilder json) {
+        json.append("{\"unit\":\"microseconds\",\"routes\":[");
+        boolean first = true;
+        for (Map.Entry<String, AtomicReferenceArray<LatencyHistogram>> route : new TreeMap<>(routes).entrySet()) {
+            AtomicReferenceArray<LatencyHistogram> histograms = route.getValue();
+            for (int i = 0; i < histograms.length(); i++) {
+                LatencyHistogram histogram = histograms.get(i);
+                if (histogram == null) {
+                    continue;
+                }
+                json.append(first ? "" : ",").append("{\"route\":");
+                AccessLog.appendString(json, route.getKey());
+                json.append(",\"status\":\"").append(STATUS_CLASSES[i / USERS.length]).append('"');
+                json.append(",\"user\":\"").append(USERS[i % USERS.length]).append('"');
+                for (int minutes : WINDOW_MINUTES) {
+                    long[] counts = histogram.since(minutes);
+                    long total = Histogram.total(counts);
+                    json.append(",\"").append(minutes).append("m\":{\"count\":").append(total)
+                            .append(",\"p50\":").append(Histogram.percentile(counts, total, 50))
+                            .append(",\"p90\":").append(Histogram.percentile(counts, total, 90))
+                            .append(",\"p99\":").append(Histogram.percentile(counts, total, 99))
+                            .append(",\"p99.9\":").append(Histogram.percentile(counts, total, 99.9))
+                            .append(",\"max\":").append(Histogram.max(counts))
+                            .append('}');
+                }
+                json.append('}');
+                first = false;
+            }
+        }
+        json.append("]}");
+    }
+
+    void close() {
+        ticker.shutdownNow();
+    }
+}
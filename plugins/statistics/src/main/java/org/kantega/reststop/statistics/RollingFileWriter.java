@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kantega.reststop.statistics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Appends lines to a file, renaming it to file.1, file.2 and so on when it grows past a maximum size.
+ */
+class RollingFileWriter {
+
+    private final File file;
+    private final long maxSize;
+    private final int backups;
+
+    private Writer writer;
+    private long size;
+
+    RollingFileWriter(File file, long maxSize, int backups) throws IOException {
+        this.file = file;
+        this.maxSize = maxSize;
+        this.backups = backups;
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        open();
+    }
+
+    private void open() throws IOException {
+        size = file.length();
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    void writeLine(CharSequence line) throws IOException {
+        if (size > 0 && size + line.length() + 1 > maxSize) {
+            roll();
+        }
+        writer.append(line).append('\n');
+        // Characters, not bytes, good enough for deciding when to roll
+        size += line.length() + 1;
+    }
+
+    private void roll() throws IOException {
+        writer.close();
+        new File(file.getPath() + "." + backups).delete();
+        for (int i = backups - 1; i >= 1; i--) {
+            new File(file.getPath() + "." + i).renameTo(new File(file.getPath() + "." + (i + 1)));
+        }
+        if (backups > 0) {
+            file.renameTo(new File(file.getPath() + ".1"));
+        } else {
+            file.delete();
+        }
+        open();
+    }
+
+    /**
+     * Closes the file, discarding anything not yet written, and opens it again.
+     */
+    void reopen() throws IOException {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            // Already failing, the new writer is what matters
+        }
+        open();
+    }
+
+    void flush() throws IOException {
+        writer.flush();
+    }
+
+    void close() throws IOException {
+        writer.close();
+    }
+
+    @Override
+    public String toString() {
+        return file.getPath();
+    }
+}
@@ -16,13 +16,11 @@
 
 package org.kantega.reststop.statistics;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.kantega.reststop.servlet.api.ServletBuilder;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.xml.bind.DatatypeConverter;
 import java.io.IOException;
 
 /**
@@ -30,32 +28,75 @@ import java.io.IOException;
  */
 public class StatisticsFilter implements Filter {
 
-    private static final Logger LOG = LoggerFactory.getLogger("STATISTICS");
+    private static final String UNMATCHED_ROUTE = "unmatched";
+
+    private final AccessLog accessLog;
+    private final LatencyRecorder latencies;
+
+    StatisticsFilter(AccessLog accessLog, LatencyRecorder latencies) {
+        this.accessLog = accessLog;
+        this.latencies = latencies;
+    }
+
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
     }
 
     @Override
     public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain) throws IOException, ServletException {
-        long before = System.currentTimeMillis();
+        long timestamp = System.currentTimeMillis();
+        long before = System.nanoTime();
         filterChain.doFilter(servletRequest,servletResponse);
 
         HttpServletRequest req = (HttpServletRequest) servletRequest;
         HttpServletResponse resp = (HttpServletResponse) servletResponse;
 
-        StringBuilder b = new StringBuilder();
-        b.append(req.getRequestURI());
-
+        String method = req.getMethod();
+        String uri = req.getRequestURI();
         String remoteUser = req.getRemoteUser();
+        String route = route(req);
 
-        if( remoteUser != null){
-            b.append("[").append(remoteUser).append("]");
-        }
+        if(req.isAsyncStarted()) {
+            // The response is not written until the async request completes
+            req.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    record(timestamp, before, method, uri, remoteUser, route, resp.getStatus());
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
 
-        b.append(" ").append(resp.getStatus()).append(" ").append(String.valueOf(System.currentTimeMillis() - before));
+                }
 
-        LOG.info( b.toString());
+                @Override
+                public void onError(AsyncEvent event) {
+
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                    event.getAsyncContext().addListener(this);
+                }
+            });
+        } else {
+            record(timestamp, before, method, uri, remoteUser, route, resp.getStatus());
+        }
+    }
+
+    private void record(long timestamp, long before, String method, String uri, String remoteUser, String route, int status) {
+        long latency = System.nanoTime() - before;
+        accessLog.log(timestamp, method, uri, remoteUser, status, latency);
+        latencies.record(route, status, remoteUser != null, latency);
+    }
 
+    /**
+     * The servlet mapping the request was dispatched to, as in /assets/*. Other requests, including those handled by
+     * filters such as JAX-RS resources, share one route, so clients can't add routes by choosing paths.
+     */
+    private String route(HttpServletRequest req) {
+        Object mapping = req.getAttribute(ServletBuilder.MATCHED_MAPPING);
+        return mapping instanceof String ? (String) mapping : UNMATCHED_ROUTE;
     }
 
     @Override
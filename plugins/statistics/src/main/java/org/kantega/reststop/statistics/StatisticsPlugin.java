@@ -20,7 +20,10 @@ import org.kantega.reststop.api.*;
 import org.kantega.reststop.servlet.api.FilterPhase;
 import org.kantega.reststop.servlet.api.ServletBuilder;
 
+import javax.annotation.PreDestroy;
 import javax.servlet.Filter;
+import java.io.File;
+import java.io.IOException;
 
 /**
 
@@ -31,8 +34,35 @@ public class StatisticsPlugin {
     @Export
     private final Filter statsFilter;
 
-    public StatisticsPlugin(ServletBuilder servletBuilder) {
+    @Export
+    private final Filter latencyServlet;
+
+    private final AccessLog accessLog;
+
+    private final LatencyRecorder latencies;
+
+    public StatisticsPlugin(ServletBuilder servletBuilder,
+                            @Config(required = false) String accessLogFile,
+                            @Config(defaultValue = "10485760") long accessLogMaxFileSize,
+                            @Config(defaultValue = "5") int accessLogBackups,
+                            @Config(defaultValue = "8192") int accessLogBufferSize,
+                            @Config(defaultValue = "/statistics/latency") String latencyServletPath,
+                            @Config(defaultValue = "200") int latencyMaxRoutes) throws IOException {
+
+        accessLog = new AccessLog(accessLogBufferSize, accessLogFile == null
+                ? null
+                : new RollingFileWriter(new File(accessLogFile), accessLogMaxFileSize, accessLogBackups));
+
+        latencies = new LatencyRecorder(latencyMaxRoutes);
+
+        statsFilter = servletBuilder.filter(new StatisticsFilter(accessLog, latencies), FilterPhase.USER,"/*");
+
+        latencyServlet = servletBuilder.servlet(new LatencyServlet(latencies), latencyServletPath);
+    }
 
-        statsFilter = servletBuilder.filter(new StatisticsFilter(), FilterPhase.USER,"/*");
+    @PreDestroy
+    public void stop() {
+        accessLog.close();
+        latencies.close();
     }
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.statistics;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class AccessLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldDropRecordsWhenRingIsFull() throws Exception {
+        File file = new File(folder.getRoot(), "access.log");
+        BlockingWriter writer = new BlockingWriter(file);
+        AccessLog log = new AccessLog(4, writer);
+
+        log.log(0, "GET", "/0", null, 200, 0);
+        assertTrue(writer.writing.await(5, TimeUnit.SECONDS));
+
+        // The writer holds /0 and its slot is free again, so four more fit
+        for (int i = 1; i <= 6; i++) {
+            log.log(0, "GET", "/" + i, null, 200, 0);
+        }
+        assertThat(log.getDropped(), is(2L));
+
+        writer.release.countDown();
+        log.close();
+
+        List<String> lines = Files.readAllLines(file.toPath());
+        assertThat(lines.size(), is(6));
+        for (int i = 0; i <= 4; i++) {
+            assertTrue(lines.get(i), lines.get(i).contains("\"uri\":\"/" + i + "\""));
+        }
+        assertTrue(lines.get(5), lines.get(5).endsWith("\"dropped\":2}"));
+    }
+
+    @Test
+    public void shouldKeepOrderWhenRingWraps() throws Exception {
+        File file = new File(folder.getRoot(), "access.log");
+        AccessLog log = new AccessLog(4, new RollingFileWriter(file, Long.MAX_VALUE, 0));
+
+        int total = 1000;
+        for (int i = 0; i < total; i++) {
+            log.log(0, "GET", "/" + i, "user", 200, TimeUnit.MICROSECONDS.toNanos(i));
+            if (i % 4 == 0) {
+                Thread.sleep(1);
+            }
+        }
+        log.close();
+
+        long written = 0;
+        int previous = -1;
+        for (String line : Files.readAllLines(file.toPath())) {
+            if (line.contains("\"dropped\"")) {
+                continue;
+            }
+            int uri = Integer.parseInt(line.substring(line.indexOf("\"uri\":\"/") + 8, line.indexOf("\",\"user\"")));
+            assertTrue(uri + " after " + previous, uri > previous);
+            assertTrue(line, line.endsWith("\"micros\":" + uri + "}"));
+            previous = uri;
+            written++;
+        }
+        assertThat(written + log.getDropped(), is((long) total));
+        assertTrue("ring never wrapped", written > 4);
+    }
+
+    @Test
+    public void shouldKeepWritingAfterFailedWrite() throws Exception {
+        File file = new File(folder.getRoot(), "access.log");
+        FailingWriter writer = new FailingWriter(file);
+        AccessLog log = new AccessLog(4, writer);
+
+        log.log(0, "GET", "/0", null, 200, 0);
+        assertTrue(writer.failed.await(5, TimeUnit.SECONDS));
+        log.log(0, "GET", "/1", null, 200, 0);
+        log.close();
+
+        assertThat(writer.reopened, is(1));
+        assertThat(log.getDropped(), is(1L));
+        List<String> lines = Files.readAllLines(file.toPath());
+        assertThat(lines.size(), is(2));
+        assertTrue(lines.get(0), lines.get(0).contains("\"uri\":\"/1\""));
+        assertTrue(lines.get(1), lines.get(1).endsWith("\"dropped\":1}"));
+    }
+
+    private static class FailingWriter extends RollingFileWriter {
+        private final CountDownLatch failed = new CountDownLatch(1);
+        private volatile int reopened;
+
+        FailingWriter(File file) throws IOException {
+            super(file, Long.MAX_VALUE, 0);
+        }
+
+        @Override
+        void writeLine(CharSequence line) throws IOException {
+            if (failed.getCount() > 0) {
+                failed.countDown();
+                throw new IOException("Disk full");
+            }
+            super.writeLine(line);
+        }
+
+        @Override
+        void reopen() throws IOException {
+            reopened++;
+            super.reopen();
+        }
+    }
+
+    private static class BlockingWriter extends RollingFileWriter {
+        private final CountDownLatch writing = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        BlockingWriter(File file) throws IOException {
+            super(file, Long.MAX_VALUE, 0);
+        }
+
+        @Override
+        void writeLine(CharSequence line) throws IOException {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.writeLine(line);
+        }
+    }
+}
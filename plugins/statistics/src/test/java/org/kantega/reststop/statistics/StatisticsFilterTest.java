@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.statistics;
+
+import org.junit.Test;
+import org.kantega.reststop.servlet.api.ServletBuilder;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ */
+public class StatisticsFilterTest {
+
+    @Test
+    public void shouldOnlyRecordMatchedMappingsAsRoutes() throws Exception {
+        LatencyRecorder latencies = mock(LatencyRecorder.class);
+        StatisticsFilter filter = new StatisticsFilter(mock(AccessLog.class), latencies);
+
+        filter.doFilter(request("/app/assets/style.css", "/assets/*"), response(200), mock(FilterChain.class));
+        filter.doFilter(request("/app/scanner-12345/probe", null), response(404), mock(FilterChain.class));
+
+        verify(latencies).record(eq("/assets/*"), eq(200), eq(false), anyLong());
+        verify(latencies).record(eq("unmatched"), eq(404), eq(false), anyLong());
+    }
+
+    private static HttpServletRequest request(String uri, String mapping) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getRequestURI()).thenReturn(uri);
+        when(request.getContextPath()).thenReturn("/app");
+        when(request.getAttribute(ServletBuilder.MATCHED_MAPPING)).thenReturn(mapping);
+        return request;
+    }
+
+    private static HttpServletResponse response(int status) {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getStatus()).thenReturn(status);
+        return response;
+    }
+}
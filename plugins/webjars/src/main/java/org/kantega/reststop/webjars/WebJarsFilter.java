@@ -17,15 +17,18 @@
 package org.kantega.reststop.webjars;
 
 import org.kantega.reststop.classloaderutils.PluginClassLoader;
+import org.kantega.reststop.classloaderutils.PluginResourceIndex;
+import org.kantega.reststop.servlet.api.StaticContent;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.URL;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Scans META-INF/resource of all plugins for webjars related resources, and then adds them to response.
@@ -35,11 +38,21 @@ import java.util.Collection;
 public class WebJarsFilter implements Filter {
 
 
-    private final Collection<PluginClassLoader> classloaders;
+    private final PluginResourceIndex resources;
+    private final Map<String, String> versions;
 
     public WebJarsFilter(Collection<PluginClassLoader> classloaders) {
+        this(classloaders, Collections.emptyMap());
+    }
+
+    /**
+     * @param versions webjar versions by "versions_" + artifactId, as exported in {@link WebjarsVersions}, used to serve
+     *                 paths without a version directory such as /webjars/jquery/jquery.js
+     */
+    public WebJarsFilter(Collection<PluginClassLoader> classloaders, Map<String, String> versions) {
 
-        this.classloaders = classloaders;
+        this.resources = new PluginResourceIndex(classloaders, "META-INF/resources/");
+        this.versions = versions;
     }
 
     @Override
@@ -56,11 +69,11 @@ public class WebJarsFilter implements Filter {
         String contextRelative = req.getRequestURI().substring(req.getContextPath().length());
 
         String path = "META-INF/resources" + contextRelative;
-        for(PluginClassLoader loader : classloaders){
+        for(String candidate : candidates(contextRelative)){
 
-            URL resource = loader.getResource(path);
+            PluginResourceIndex.Resource resource = resources.find(candidate);
 
-            if (resource != null && resource.getPath().endsWith("/") && !path.endsWith("/")) {
+            if (resource != null && resource.isDirectory() && !path.endsWith("/")) {
                 filterChain.doFilter(req, res);
                 return;
             }
@@ -71,9 +84,10 @@ public class WebJarsFilter implements Filter {
                     res.setContentType(mimeType);
                 }
 
-                try(InputStream in=resource.openStream()){
-                    copy(in, res.getOutputStream());
-                };
+                if(isVersioned(contextRelative)) {
+                    res.setHeader("Cache-Control", "public, max-age=31536000, immutable");
+                }
+                StaticContent.send(req, res, StaticContent.of(resource.getUrl()));
 
                 return;
             }
@@ -81,12 +95,30 @@ public class WebJarsFilter implements Filter {
         filterChain.doFilter(req, res);
     }
 
-    private void copy(InputStream input, OutputStream output) throws IOException {
-        byte[] buffer = new byte[1024 * 4];
-        int n;
-        while (-1 != (n = input.read(buffer))) {
-            output.write(buffer, 0, n);
+    /**
+     * The resource path for the request, followed by the path with the webjar's version directory inserted, as in
+     * /webjars/jquery/3.3.1/jquery.js for /webjars/jquery/jquery.js, if the webjar is known.
+     */
+    private List<String> candidates(String contextRelative) {
+        String path = "META-INF/resources" + contextRelative;
+        String[] segments = contextRelative.split("/", 4);
+        if(segments.length < 4 || !"webjars".equals(segments[1])) {
+            return Collections.singletonList(path);
         }
+        String version = versions.get("versions_" + segments[2]);
+        return version == null || version.equals(segments[3].split("/", 2)[0])
+                ? Collections.singletonList(path)
+                : Arrays.asList(path, "META-INF/resources/webjars/" + segments[2] + "/" + version + "/" + segments[3]);
+    }
+
+    /**
+     * Whether the path is below the version directory of a known webjar, as in /webjars/jquery/3.3.1/jquery.js, so its
+     * content never changes.
+     */
+    private boolean isVersioned(String contextRelative) {
+        String[] segments = contextRelative.split("/", 5);
+        return segments.length == 5 && "webjars".equals(segments[1])
+                && segments[3].equals(versions.get("versions_" + segments[2]));
     }
 
     @Override
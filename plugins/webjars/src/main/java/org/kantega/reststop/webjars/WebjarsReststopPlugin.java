@@ -40,56 +40,58 @@ public class WebjarsReststopPlugin {
     @Export
     private final Filter webjarsFilter;
 
-    private Map<String, String> versions;
-
     public WebjarsReststopPlugin(final ServletBuilder servletBuilder, final Collection<PluginClassLoader> classLoaders) {
 
-        webjarsFilter = servletBuilder.filter(new WebJarsFilter(classLoaders), FilterPhase.USER, "/webjars/*");
+        // The plugin is recreated whenever the class loaders change, so the versions are only scanned once per deploy
+        Map<String, String> versions = Collections.unmodifiableMap(getVersionsForWebJars(classLoaders));
 
-        v = () -> getVersionsForWebJars(classLoaders);
-    }
+        webjarsFilter = servletBuilder.filter(new WebJarsFilter(classLoaders, versions), FilterPhase.USER, "/webjars/*");
 
-    private synchronized Map<String, String> getVersionsForWebJars(Collection<PluginClassLoader> classLoaders) {
+        v = () -> versions;
+    }
 
-        if (versions == null) {
-            versions = new HashMap<>();
+    private Map<String, String> getVersionsForWebJars(Collection<PluginClassLoader> classLoaders) {
 
-            Set<String> webjars = new HashSet<>();
+        Map<String, String> versions = new HashMap<>();
 
-            try {
-                for (PluginClassLoader loader : classLoaders) {
-                    Enumeration<URL> resources = loader.getResources("META-INF/resources/webjars/");
-                    while (resources.hasMoreElements()) {
-                        URL webJar = resources.nextElement();
-                        String file = URLDecoder.decode(webJar.getFile(), "UTF-8");
-                        file = file.substring(0, file.indexOf("!"));
-                        webjars.add(file);
+        Set<String> webjars = new HashSet<>();
 
+        try {
+            for (PluginClassLoader loader : classLoaders) {
+                Enumeration<URL> resources = loader.getResources("META-INF/resources/webjars/");
+                while (resources.hasMoreElements()) {
+                    URL webJar = resources.nextElement();
+                    if (!"jar".equals(webJar.getProtocol())) {
+                        continue;
                     }
-                }
+                    String file = URLDecoder.decode(webJar.getFile(), "UTF-8");
+                    file = file.substring(0, file.indexOf("!"));
+                    webjars.add(file);
 
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+                }
             }
-            for (String webjar : webjars) {
-                String file = webjar.substring(0, webjar.lastIndexOf("/"));
-
-                String version = file.substring(file.lastIndexOf("/") + 1);
-                String artifact = file.substring(0, file.lastIndexOf("/"));
-                String artifactId = artifact.substring(artifact.lastIndexOf("/") + 1);
-
-                String key = "versions_" + artifactId;
-                if (versions.get(key) != null) {
-                    VersionComparator cmp = new VersionComparator();
-                    if (cmp.compare(version, versions.get(key)) == -1) {
-                        versions.put(key, version);
-                    }
-                } else {
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        for (String webjar : webjars) {
+            String file = webjar.substring(0, webjar.lastIndexOf("/"));
+
+            String version = file.substring(file.lastIndexOf("/") + 1);
+            String artifact = file.substring(0, file.lastIndexOf("/"));
+            String artifactId = artifact.substring(artifact.lastIndexOf("/") + 1);
+
+            String key = "versions_" + artifactId;
+            if (versions.get(key) != null) {
+                VersionComparator cmp = new VersionComparator();
+                if (cmp.compare(version, versions.get(key)) == -1) {
                     versions.put(key, version);
                 }
+            } else {
+                versions.put(key, version);
             }
-
         }
+
         return getWithCorrectPath(versions);
     }
 
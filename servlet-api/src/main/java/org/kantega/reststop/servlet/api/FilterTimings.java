@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kantega.reststop.servlet.api;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Time spent in the plugin filters, by plugin and filter phase. Self time leaves out the time spent further down the
+ * filter chain, inclusive time does not. Nothing is recorded unless filter timing is enabled.
+ */
+public interface FilterTimings {
+
+    boolean isEnabled();
+
+    Collection<Timing> getTimings();
+
+    /**
+     * Calls the listener with every timing there is, and with every timing added later until it is removed.
+     */
+    void addListener(Consumer<Timing> listener);
+
+    void removeListener(Consumer<Timing> listener);
+
+    interface Timing {
+
+        /**
+         * @return the class name of the plugin exporting the filters
+         */
+        String getPlugin();
+
+        FilterPhase getPhase();
+
+        long getCount();
+
+        /**
+         * @param quantile between 0 and 1
+         */
+        long getSelfNanos(double quantile);
+
+        /**
+         * @param quantile between 0 and 1
+         */
+        long getInclusiveNanos(double quantile);
+    }
+}
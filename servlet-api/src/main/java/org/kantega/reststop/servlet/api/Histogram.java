@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.servlet.api;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram with buckets of logarithmically growing width, each power of two split in 32 linear sub-buckets,
+ * keeping values within about 3% of what was recorded. Each bucket is a {@link LongAdder}, so concurrent recording
+ * doesn't contend on a shared counter. Buckets are created when first recorded to, as values usually only spread
+ * over a fraction of them.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long maxValue;
+    private final AtomicReferenceArray<LongAdder> counts;
+
+    /**
+     * @param maxValue values at or above this are counted in the last bucket
+     */
+    public Histogram(long maxValue) {
+        this.maxValue = maxValue;
+        this.counts = new AtomicReferenceArray<>(index(maxValue - 1) + 1);
+    }
+
+    public void record(long value) {
+        int index = index(Math.min(Math.max(value, 0), maxValue - 1));
+        LongAdder count = counts.get(index);
+        if (count == null) {
+            counts.compareAndSet(index, null, new LongAdder());
+            count = counts.get(index);
+        }
+        count.increment();
+    }
+
+    /**
+     * @return the current count of each bucket, by {@link #index(long)}
+     */
+    public long[] getCounts() {
+        long[] values = new long[counts.length()];
+        for (int i = 0; i < values.length; i++) {
+            LongAdder count = counts.get(i);
+            values[i] = count == null ? 0 : count.sum();
+        }
+        return values;
+    }
+
+    public static int index(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * @return the highest value counted in the bucket with the given index
+     */
+    public static long highestValue(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >> SUB_BUCKET_BITS) - 1;
+        long lowest = (long) (index - (shift << SUB_BUCKET_BITS)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    public static long total(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return the value below or at which the given percentage of the counts are, or 0 if there are none
+     */
+    public static long percentile(long[] counts, long total, double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return highestValue(counts.length - 1);
+    }
+
+    public static long max(long[] counts) {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] != 0) {
+                return highestValue(i);
+            }
+        }
+        return 0;
+    }
+}
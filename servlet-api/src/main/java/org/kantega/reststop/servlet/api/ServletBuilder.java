@@ -29,6 +29,12 @@ import java.util.Properties;
  */
 public interface ServletBuilder {
 
+    /**
+     * Request attribute holding the mapping matched by the servlet added with {@link #servlet} which handles the request.
+     * It is not set for requests handled by filters, such as JAX-RS applications.
+     */
+    String MATCHED_MAPPING = "MATCHED_MAPPING";
+
     FilterChain newFilterChain(FilterChain filterChain);
 
     ServletConfig servletConfig(String name, Properties properties);
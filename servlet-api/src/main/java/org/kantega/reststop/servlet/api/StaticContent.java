@@ -0,0 +1,345 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.servlet.api;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes static resources to servlet responses, answering conditional and range requests.
+ */
+public final class StaticContent {
+
+    private static final int MAX_RANGES = 16;
+
+    private StaticContent() {
+    }
+
+    /**
+     * The content of a static resource, able to write any part of itself.
+     */
+    public interface Body {
+
+        /**
+         * @return the length in bytes, or -1 if unknown
+         */
+        long getLength();
+
+        /**
+         * @return the last modification time, or 0 if unknown
+         */
+        long getLastModified();
+
+        /**
+         * @return the quoted entity tag, or null if there is none
+         */
+        String getETag();
+
+        void write(long start, long length, OutputStream out) throws IOException;
+    }
+
+    public static Body of(byte[] content, long lastModified, String etag) {
+        return new Body() {
+            @Override
+            public long getLength() {
+                return content.length;
+            }
+
+            @Override
+            public long getLastModified() {
+                return lastModified;
+            }
+
+            @Override
+            public String getETag() {
+                return etag;
+            }
+
+            @Override
+            public void write(long start, long length, OutputStream out) throws IOException {
+                out.write(content, (int) start, (int) length);
+            }
+        };
+    }
+
+    /**
+     * A body reading the resource through its URL. The entity tag is made from the length and modification time.
+     */
+    public static Body of(URL resource) throws IOException {
+        URLConnection connection = resource.openConnection();
+        long length = connection.getContentLengthLong();
+        long lastModified = connection.getLastModified();
+        String etag = length == -1 || lastModified == 0
+                ? null
+                : "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+
+        return new Body() {
+            @Override
+            public long getLength() {
+                return length;
+            }
+
+            @Override
+            public long getLastModified() {
+                return lastModified;
+            }
+
+            @Override
+            public String getETag() {
+                return etag;
+            }
+
+            @Override
+            public void write(long start, long length, OutputStream out) throws IOException {
+                try (InputStream in = resource.openStream()) {
+                    copy(in, start, length, out);
+                }
+            }
+        };
+    }
+
+    /**
+     * Sends the body with validators and <code>Accept-Ranges</code>, answering conditional requests with 304 or 412
+     * and <code>Range</code> requests with 206, as one range or multipart/byteranges. The content type and any other
+     * headers should be set before calling this.
+     */
+    public static void send(HttpServletRequest req, HttpServletResponse resp, Body body) throws IOException {
+        long length = body.getLength();
+        long lastModified = body.getLastModified();
+        String etag = body.getETag();
+
+        if (etag != null) {
+            resp.setHeader("ETag", etag);
+        }
+        if (lastModified != 0) {
+            resp.setDateHeader("Last-Modified", lastModified);
+        }
+
+        String ifMatch = req.getHeader("If-Match");
+        if (ifMatch != null) {
+            if (!matches(ifMatch, etag, false)) {
+                resp.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED);
+                return;
+            }
+        } else if (lastModified != 0 && isModifiedSince(lastModified, getDateHeader(req, "If-Unmodified-Since"))) {
+            resp.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED);
+            return;
+        }
+
+        boolean getOrHead = "GET".equals(req.getMethod()) || "HEAD".equals(req.getMethod());
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            if (matches(ifNoneMatch, etag, true)) {
+                resp.setStatus(getOrHead ? HttpServletResponse.SC_NOT_MODIFIED : HttpServletResponse.SC_PRECONDITION_FAILED);
+                return;
+            }
+        } else if (getOrHead && lastModified != 0) {
+            long ifModifiedSince = getDateHeader(req, "If-Modified-Since");
+            if (ifModifiedSince != -1 && !isModifiedSince(lastModified, ifModifiedSince)) {
+                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        }
+
+        boolean head = "HEAD".equals(req.getMethod());
+        if (length == -1) {
+            if (!head) {
+                body.write(0, -1, resp.getOutputStream());
+            }
+            return;
+        }
+
+        resp.setHeader("Accept-Ranges", "bytes");
+        List<long[]> ranges = "GET".equals(req.getMethod()) && isRangeCurrent(req, etag, lastModified)
+                ? parseRanges(req.getHeader("Range"), length)
+                : null;
+
+        if (ranges == null) {
+            resp.setContentLengthLong(length);
+            if (!head) {
+                body.write(0, length, resp.getOutputStream());
+            }
+        } else if (ranges.isEmpty()) {
+            resp.setHeader("Content-Range", "bytes */" + length);
+            resp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        } else if (ranges.size() == 1) {
+            long[] range = ranges.get(0);
+            resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            resp.setHeader("Content-Range", contentRange(range, length));
+            resp.setContentLengthLong(range[1] - range[0] + 1);
+            body.write(range[0], range[1] - range[0] + 1, resp.getOutputStream());
+        } else {
+            String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong()) + Long.toHexString(System.nanoTime());
+            String contentType = resp.getContentType();
+            List<byte[]> partHeaders = new ArrayList<>();
+            long contentLength = 0;
+            for (long[] range : ranges) {
+                byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                        + (contentType == null ? "" : "Content-Type: " + contentType + "\r\n")
+                        + "Content-Range: " + contentRange(range, length) + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+                partHeaders.add(partHeader);
+                contentLength += partHeader.length + range[1] - range[0] + 1;
+            }
+            byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+            contentLength += end.length;
+
+            resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            resp.setContentType("multipart/byteranges; boundary=" + boundary);
+            resp.setContentLengthLong(contentLength);
+            OutputStream out = resp.getOutputStream();
+            for (int i = 0; i < ranges.size(); i++) {
+                long[] range = ranges.get(i);
+                out.write(partHeaders.get(i));
+                body.write(range[0], range[1] - range[0] + 1, out);
+            }
+            out.write(end);
+        }
+    }
+
+    private static String contentRange(long[] range, long length) {
+        return "bytes " + range[0] + "-" + range[1] + "/" + length;
+    }
+
+    /**
+     * A Range only applies if its If-Range, if any, still matches the representation.
+     */
+    private static boolean isRangeCurrent(HttpServletRequest req, String etag, long lastModified) {
+        String ifRange = req.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return etag != null && ifRange.equals(etag);
+        }
+        long date = getDateHeader(req, "If-Range");
+        return date != -1 && lastModified != 0 && lastModified / 1000 == date / 1000;
+    }
+
+    /**
+     * @return the satisfiable ranges as inclusive [first, last] pairs, empty if none are, or null to send the whole body
+     */
+    private static List<long[]> parseRanges(String header, long length) {
+        if (header == null || !header.trim().startsWith("bytes=")) {
+            return null;
+        }
+        String[] specs = header.trim().substring("bytes=".length()).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+        List<long[]> ranges = new ArrayList<>();
+        try {
+            for (String spec : specs) {
+                spec = spec.trim();
+                int dash = spec.indexOf('-');
+                if (dash == -1) {
+                    return null;
+                }
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                if (first.isEmpty()) {
+                    long suffix = Long.parseLong(last);
+                    if (suffix > 0 && length > 0) {
+                        ranges.add(new long[]{Math.max(0, length - suffix), length - 1});
+                    }
+                } else {
+                    long start = Long.parseLong(first);
+                    long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                    if (start > end || start < 0) {
+                        return null;
+                    }
+                    if (start < length) {
+                        ranges.add(new long[]{start, Math.min(end, length - 1)});
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return ranges;
+    }
+
+    private static boolean matches(String header, String etag, boolean weak) {
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*")) {
+                return true;
+            }
+            if (etag == null) {
+                continue;
+            }
+            if (weak) {
+                if (opaque(candidate).equals(opaque(etag))) {
+                    return true;
+                }
+            } else if (!candidate.startsWith("W/") && candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaque(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static boolean isModifiedSince(long lastModified, long date) {
+        return date != -1 && lastModified / 1000 > date / 1000;
+    }
+
+    private static long getDateHeader(HttpServletRequest req, String name) {
+        try {
+            return req.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Copies <code>length</code> bytes from <code>start</code>, or everything from <code>start</code> if length is -1.
+     */
+    private static void copy(InputStream input, long start, long length, OutputStream output) throws IOException {
+        while (start > 0) {
+            long skipped = input.skip(start);
+            if (skipped <= 0) {
+                if (input.read() == -1) {
+                    return;
+                }
+                skipped = 1;
+            }
+            start -= skipped;
+        }
+        byte[] buffer = new byte[1024 * 4];
+        int n;
+        while ((length == -1 || length > 0)
+                && -1 != (n = input.read(buffer, 0, length == -1 ? buffer.length : (int) Math.min(buffer.length, length)))) {
+            output.write(buffer, 0, n);
+            if (length != -1) {
+                length -= n;
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.servlet.api;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class HistogramTest {
+
+    @Test
+    public void shouldKeepValuesWithinThreePercent() {
+        for (long value = 0; value < 1L << 40; value = value * 3 / 2 + 1) {
+            long highest = Histogram.highestValue(Histogram.index(value));
+            assertTrue(value + " counted as " + highest, highest >= value && highest - value <= value * 0.032);
+        }
+    }
+
+    @Test
+    public void shouldCountSmallValuesExactly() {
+        for (long value = 0; value < 64; value++) {
+            assertThat(Histogram.highestValue(Histogram.index(value)), is(value));
+        }
+    }
+
+    @Test
+    public void shouldGivePercentilesAndMax() {
+        Histogram histogram = new Histogram(1000);
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        long[] counts = histogram.getCounts();
+
+        assertThat(Histogram.total(counts), is(100L));
+        assertThat(Histogram.percentile(counts, 100, 50), is(50L));
+        assertThat(Histogram.percentile(counts, 100, 99), is(99L));
+        assertThat(Histogram.max(counts), is(101L));
+    }
+
+    @Test
+    public void shouldClampValuesToRange() {
+        Histogram histogram = new Histogram(1000);
+        histogram.record(-5);
+        histogram.record(1_000_000);
+        long[] counts = histogram.getCounts();
+
+        assertThat(counts[0], is(1L));
+        assertThat(counts[counts.length - 1], is(1L));
+        assertThat(Histogram.max(counts), is(Histogram.highestValue(Histogram.index(999))));
+    }
+
+    @Test
+    public void shouldGiveZeroWhenEmpty() {
+        long[] counts = new Histogram(1000).getCounts();
+
+        assertThat(Histogram.percentile(counts, 0, 99), is(0L));
+        assertThat(Histogram.max(counts), is(0L));
+    }
+}
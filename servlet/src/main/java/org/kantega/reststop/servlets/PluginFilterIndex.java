@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.servlets;
+
+import org.kantega.reststop.api.PluginExport;
+
+import javax.servlet.Filter;
+import javax.servlet.http.HttpServletRequest;
+import java.util.*;
+
+/**
+ * Immutable dispatch index over the deployed plugin filters.
+ *
+ * Exact and wildcard mappings are compiled into a single character trie where every node holds the
+ * complete, phase-ordered list of filters matching a request path ending at (or passing through) that node.
+ * Resolving a request is a single walk over its context relative URI.
+ */
+class PluginFilterIndex {
+
+    static final PluginFilterIndex EMPTY = new PluginFilterIndex(Collections.emptyList());
+
+    private final Node root = new Node();
+
+    PluginFilterIndex(List<PluginExport<Filter>> filters) {
+        this(filters, null);
+    }
+
+    /**
+     * @param filters the filters to index, already sorted in dispatch order
+     * @param timings the timing of each filter, or null when filters are not timed
+     */
+    PluginFilterIndex(List<PluginExport<Filter>> filters, List<PluginFilterTimings.Timing> timings) {
+        List<Match> unmapped = new ArrayList<>();
+
+        for (int f = 0; f < filters.size(); f++) {
+            PluginExport<Filter> export = filters.get(f);
+            if(export.getExport() instanceof ReststopInitializer.MappingWrappedFilter) {
+                String[] mappings = ((ReststopInitializer.MappingWrappedFilter) export.getExport()).getMappings();
+                for (int m = 0; m < mappings.length; m++) {
+                    String mapping = mappings[m];
+                    if(mapping.endsWith("*")) {
+                        root.insert(mapping, mapping.length() - 1).prefixMatches.add(new Match(f, m));
+                    } else {
+                        root.insert(mapping, mapping.length()).exactMatches.add(new Match(f, m));
+                    }
+                }
+            } else {
+                unmapped.add(new Match(f, -1));
+            }
+        }
+
+        root.compile(filters, timings, unmapped, null);
+    }
+
+    /**
+     * Returns the filters matching the given request, in dispatch order. The returned array is shared and must not be modified.
+     */
+    MatchedFilter[] resolve(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+
+        Node node = root;
+        for (int i = request.getContextPath().length(); i < uri.length(); i++) {
+            Node child = node.child(uri.charAt(i));
+            if(child == null) {
+                return node.prefixResolved;
+            }
+            node = child;
+        }
+        return node.exactResolved != null ? node.exactResolved : node.prefixResolved;
+    }
+
+    /**
+     * A filter selected for a request, together with the mapping which selected it.
+     */
+    static final class MatchedFilter {
+        final PluginExport<Filter> export;
+        final Filter filter;
+        final String mapping;
+        final boolean servletWrapper;
+        final PluginFilterTimings.Timing timing;
+
+        private MatchedFilter(PluginExport<Filter> export, String mapping, PluginFilterTimings.Timing timing) {
+            this.export = export;
+            this.filter = export.getExport() instanceof ReststopInitializer.MappingWrappedFilter
+                    ? ((ReststopInitializer.MappingWrappedFilter) export.getExport()).getFilter()
+                    : export.getExport();
+            this.mapping = mapping;
+            this.servletWrapper = filter instanceof ReststopInitializer.DefaultServletBuilder.ServletWrapperFilter;
+            this.timing = timing;
+        }
+    }
+
+    private static final class Match {
+        final int filter;
+        final int mapping;
+
+        Match(int filter, int mapping) {
+            this.filter = filter;
+            this.mapping = mapping;
+        }
+    }
+
+    private static final class Node {
+        private final List<Match> prefixMatches = new ArrayList<>();
+        private final List<Match> exactMatches = new ArrayList<>();
+        private final TreeMap<Character, Node> building = new TreeMap<>();
+
+        private char[] keys;
+        private Node[] children;
+
+        private MatchedFilter[] prefixResolved;
+        private MatchedFilter[] exactResolved;
+
+        Node insert(String path, int length) {
+            Node node = this;
+            for (int i = 0; i < length; i++) {
+                node = node.building.computeIfAbsent(path.charAt(i), c -> new Node());
+            }
+            return node;
+        }
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i < 0 ? null : children[i];
+        }
+
+        void compile(List<PluginExport<Filter>> filters, List<PluginFilterTimings.Timing> timings, List<Match> inherited, MatchedFilter[] inheritedResolved) {
+            List<Match> prefix = inherited;
+            if(prefixMatches.isEmpty()) {
+                prefixResolved = inheritedResolved != null ? inheritedResolved : resolve(filters, timings, prefix);
+            } else {
+                prefix = new ArrayList<>(inherited);
+                prefix.addAll(prefixMatches);
+                prefixResolved = resolve(filters, timings, prefix);
+            }
+
+            if(!exactMatches.isEmpty()) {
+                List<Match> exact = new ArrayList<>(prefix);
+                exact.addAll(exactMatches);
+                exactResolved = resolve(filters, timings, exact);
+            }
+
+            keys = new char[building.size()];
+            children = new Node[building.size()];
+            int i = 0;
+            for (Map.Entry<Character, Node> entry : building.entrySet()) {
+                keys[i] = entry.getKey();
+                children[i] = entry.getValue();
+                entry.getValue().compile(filters, timings, prefix, prefixResolved);
+                i++;
+            }
+            building.clear();
+        }
+
+        /**
+         * Orders the matches by filter position, keeping only the first matching mapping of each filter.
+         */
+        private static MatchedFilter[] resolve(List<PluginExport<Filter>> filters, List<PluginFilterTimings.Timing> timings, List<Match> matches) {
+            TreeMap<Integer, Integer> firstMapping = new TreeMap<>();
+            for (Match match : matches) {
+                firstMapping.merge(match.filter, match.mapping, Math::min);
+            }
+
+            MatchedFilter[] resolved = new MatchedFilter[firstMapping.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Integer> entry : firstMapping.entrySet()) {
+                PluginExport<Filter> export = filters.get(entry.getKey());
+                String mapping = entry.getValue() < 0 ? null : ((ReststopInitializer.MappingWrappedFilter) export.getExport()).getMappings()[entry.getValue()];
+                resolved[i++] = new MatchedFilter(export, mapping, timings == null ? null : timings.get(entry.getKey()));
+            }
+            return resolved;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kantega.reststop.servlets;
+
+import org.kantega.reststop.api.PluginExport;
+import org.kantega.reststop.servlet.api.FilterPhase;
+import org.kantega.reststop.servlet.api.FilterTimings;
+import org.kantega.reststop.servlet.api.Histogram;
+
+import javax.servlet.Filter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a {@link Timing} for each plugin and phase with filters deployed, across redeploys.
+ */
+class PluginFilterTimings implements FilterTimings {
+
+    private final boolean enabled;
+    private final Map<String, Timing> timings = new ConcurrentHashMap<>();
+    private final List<Consumer<FilterTimings.Timing>> listeners = new ArrayList<>();
+
+    PluginFilterTimings(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public Collection<FilterTimings.Timing> getTimings() {
+        return new ArrayList<>(timings.values());
+    }
+
+    @Override
+    public synchronized void addListener(Consumer<FilterTimings.Timing> listener) {
+        listeners.add(listener);
+        timings.values().forEach(listener);
+    }
+
+    @Override
+    public synchronized void removeListener(Consumer<FilterTimings.Timing> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return the timing of the filter, or null if timing is not enabled
+     */
+    synchronized Timing timing(PluginExport<Filter> export, FilterPhase phase) {
+        if (!enabled) {
+            return null;
+        }
+        String plugin = export.getPlugin().getClass().getName();
+        Timing timing = timings.get(plugin + ":" + phase);
+        if (timing == null) {
+            timing = new Timing(plugin, phase);
+            timings.put(plugin + ":" + phase, timing);
+            for (Consumer<FilterTimings.Timing> listener : listeners) {
+                listener.accept(timing);
+            }
+        }
+        return timing;
+    }
+
+    static class Timing implements FilterTimings.Timing {
+        private final String plugin;
+        private final FilterPhase phase;
+        private final Histogram self = new Histogram(Long.MAX_VALUE);
+        private final Histogram inclusive = new Histogram(Long.MAX_VALUE);
+
+        private Timing(String plugin, FilterPhase phase) {
+            this.plugin = plugin;
+            this.phase = phase;
+        }
+
+        void record(long selfNanos, long inclusiveNanos) {
+            self.record(selfNanos);
+            inclusive.record(inclusiveNanos);
+        }
+
+        @Override
+        public String getPlugin() {
+            return plugin;
+        }
+
+        @Override
+        public FilterPhase getPhase() {
+            return phase;
+        }
+
+        @Override
+        public long getCount() {
+            return Histogram.total(inclusive.getCounts());
+        }
+
+        @Override
+        public long getSelfNanos(double quantile) {
+            return quantile(self, quantile);
+        }
+
+        @Override
+        public long getInclusiveNanos(double quantile) {
+            return quantile(inclusive, quantile);
+        }
+
+        private static long quantile(Histogram histogram, double quantile) {
+            long[] counts = histogram.getCounts();
+            return Histogram.percentile(counts, Histogram.total(counts), quantile * 100);
+        }
+    }
+}
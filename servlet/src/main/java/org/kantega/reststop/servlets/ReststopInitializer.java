@@ -23,6 +23,7 @@ import org.kantega.reststop.classloaderutils.PluginInfo;
 import org.kantega.reststop.core.ClassLoaderFactory;
 import org.kantega.reststop.core.DefaultReststopPluginManager;
 import org.kantega.reststop.servlet.api.FilterPhase;
+import org.kantega.reststop.servlet.api.FilterTimings;
 import org.kantega.reststop.servlet.api.ServletBuilder;
 import org.kantega.reststop.servlet.api.ServletDeployer;
 import org.w3c.dom.Document;
@@ -56,7 +57,7 @@ public class ReststopInitializer implements ServletContainerInitializer{
     public void onStartup(Set<Class<?>> classes, ServletContext servletContext) throws ServletException {
 
 
-        PluginDelegatingFilter pluginDelegatingFilter = new PluginDelegatingFilter();
+        PluginDelegatingFilter pluginDelegatingFilter = new PluginDelegatingFilter(Boolean.parseBoolean(initParam(servletContext, "filterTimings")));
 
         DefaultServletBuilder servletBuilder = new DefaultServletBuilder(servletContext, pluginDelegatingFilter);
 
@@ -64,6 +65,7 @@ public class ReststopInitializer implements ServletContainerInitializer{
         staticServices.put(ServletContext.class, servletContext);
         staticServices.put(ServletBuilder.class, servletBuilder);
         staticServices.put(ServletDeployer.class, pluginDelegatingFilter);
+        staticServices.put(FilterTimings.class, pluginDelegatingFilter.getFilterTimings());
 
         DefaultReststopPluginManager manager = new DefaultReststopPluginManager(getClass().getClassLoader(), findGlobalConfigFile(servletContext), staticServices);
         servletContext.setAttribute("reststopPluginManager", manager);
@@ -353,7 +355,7 @@ public class ReststopInitializer implements ServletContainerInitializer{
             }
         }
 
-        private static class ServletWrapperFilter implements Filter {
+        static class ServletWrapperFilter implements Filter {
             private final HttpServlet servlet;
 
             public ServletWrapperFilter(final HttpServlet servlet) {
@@ -383,7 +385,7 @@ public class ReststopInitializer implements ServletContainerInitializer{
                     }
 
                     String getMappedServletPath(){
-                        String servletPath = (String) req.getAttribute(MappingWrappedFilter.MATCHED_MAPPING);
+                        String servletPath = (String) req.getAttribute(ServletBuilder.MATCHED_MAPPING);
                         while(servletPath.endsWith("*") || servletPath.endsWith("/")) {
                             servletPath = servletPath.substring(0, servletPath.length()-1);
                         }
@@ -403,7 +405,6 @@ public class ReststopInitializer implements ServletContainerInitializer{
 
 
     static class MappingWrappedFilter implements Filter {
-        static final String MATCHED_MAPPING = "MATCHED_MAPPING";
         private final Filter filter;
         private final String[] mappings;
         private final FilterPhase phase;
@@ -430,11 +431,19 @@ public class ReststopInitializer implements ServletContainerInitializer{
             }
         }
 
-        private boolean mappingMatchesRequest(HttpServletRequest req) {
+        Filter getFilter() {
+            return filter;
+        }
+
+        String[] getMappings() {
+            return mappings;
+        }
+
+        boolean mappingMatchesRequest(HttpServletRequest req) {
             String contextRelative = req.getRequestURI().substring(req.getContextPath().length());
             for (String mapping : mappings) {
                 if(mapping.equals(contextRelative) || mapping.endsWith("*") && contextRelative.regionMatches(0, mapping, 0, mapping.length()-1)){
-                    req.setAttribute(MATCHED_MAPPING, mapping);
+                    req.setAttribute(ServletBuilder.MATCHED_MAPPING, mapping);
                     return true;
                 }
             }
@@ -451,10 +460,29 @@ public class ReststopInitializer implements ServletContainerInitializer{
 
     public static class PluginDelegatingFilter implements Filter, ServletDeployer {
 
-        private volatile Collection<PluginExport<Filter>> filters = Collections.emptyList();
+        private volatile PluginFilterIndex filterIndex = PluginFilterIndex.EMPTY;
+
+        private final ThreadLocal<PluginFilterChain> chains = ThreadLocal.withInitial(PluginFilterChain::new);
+
+        private final PluginFilterTimings filterTimings;
+
+        private final Comparator<PluginExport<Filter>> comparator = Comparator.comparing(e -> phase(e).ordinal());
+
+        public PluginDelegatingFilter() {
+            this(false);
+        }
+
+        /**
+         * @param timed whether to record the time spent in each plugin's filters
+         */
+        public PluginDelegatingFilter(boolean timed) {
+            this.filterTimings = new PluginFilterTimings(timed);
+        }
+
+        public FilterTimings getFilterTimings() {
+            return filterTimings;
+        }
 
-        private final Comparator<PluginExport<Filter>> comparator =
-                Comparator.comparing(e -> (e.getExport() instanceof MappingWrappedFilter) ? ((MappingWrappedFilter)e.getExport()).phase.ordinal() : FilterPhase.USER.ordinal());
         @Override
         public void init(FilterConfig filterConfig) throws ServletException {
 
@@ -464,24 +492,35 @@ public class ReststopInitializer implements ServletContainerInitializer{
         public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain) throws IOException, ServletException {
 
             servletResponse.setCharacterEncoding("utf-8");
-            buildFilterChain((HttpServletRequest) servletRequest, filterChain).doFilter(servletRequest, servletResponse);
+            HttpServletRequest request = (HttpServletRequest) servletRequest;
+
+            PluginFilterChain chain = chains.get();
+            if(chain.inUse) {
+                // Re-entrant dispatch on this thread, leave the pooled chain alone
+                buildFilterChain(request, filterChain).doFilter(servletRequest, servletResponse);
+                return;
+            }
+
+            chain.reset(request, filterIndex.resolve(request), filterChain);
+            try {
+                chain.doFilter(servletRequest, servletResponse);
+            } finally {
+                if(request.isAsyncStarted()) {
+                    // The chain may be resumed from another thread, so it can't be reused
+                    chains.remove();
+                } else {
+                    chain.clear();
+                }
+            }
         }
 
 
         protected FilterChain buildFilterChain(HttpServletRequest request, FilterChain filterChain) {
-            Iterator<PluginExport<Filter>> matchingFilters = this.filters.stream()
-                    .filter(e -> isMatching(request, e))
-                    .iterator();
-            return new PluginFilterChain(request, matchingFilters, filterChain);
+            PluginFilterChain chain = new PluginFilterChain();
+            chain.reset(request, filterIndex.resolve(request), filterChain);
+            return chain;
         }
 
-        private boolean isMatching(HttpServletRequest request, PluginExport<Filter> filterExport) {
-            if(filterExport.getExport() instanceof MappingWrappedFilter) {
-                return ((MappingWrappedFilter)filterExport.getExport()).mappingMatchesRequest(request);
-            } else {
-                return true;
-            }
-        }
         @Override
         public void destroy() {
 
@@ -489,40 +528,96 @@ public class ReststopInitializer implements ServletContainerInitializer{
 
         @Override
         public void deploy(Collection<PluginExport<Filter>> filters) {
-            this.filters = filters.stream()
+            List<PluginExport<Filter>> sorted = filters.stream()
                     .sorted(comparator)
                     .collect(Collectors.toList());
+            this.filterIndex = new PluginFilterIndex(sorted, filterTimings.isEnabled()
+                    ? sorted.stream().map(e -> filterTimings.timing(e, phase(e))).collect(Collectors.toList())
+                    : null);
+        }
+
+        private static FilterPhase phase(PluginExport<Filter> export) {
+            return export.getExport() instanceof MappingWrappedFilter ? ((MappingWrappedFilter) export.getExport()).phase : FilterPhase.USER;
         }
     }
 
     private static class PluginFilterChain implements FilterChain {
-        private final FilterChain filterChain;
-        private final HttpServletRequest request;
-        private final Iterator<PluginExport<Filter>> filters;
-
-        public PluginFilterChain(HttpServletRequest request, Iterator<PluginExport<Filter>> filters, FilterChain filterChain) {
+        private FilterChain filterChain;
+        private HttpServletRequest request;
+        private PluginFilterIndex.MatchedFilter[] filters;
+        private int position;
+        private boolean inUse;
+        private boolean timed;
+        private long downstreamNanos;
+
+        private void reset(HttpServletRequest request, PluginFilterIndex.MatchedFilter[] filters, FilterChain filterChain) {
             this.request = request;
             this.filters = filters;
             this.filterChain = filterChain;
+            this.position = 0;
+            this.inUse = true;
+            this.timed = filters.length > 0 && filters[0].timing != null;
+            this.downstreamNanos = 0;
+        }
+
+        private void clear() {
+            this.request = null;
+            this.filters = null;
+            this.filterChain = null;
+            this.inUse = false;
         }
+
         public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
-            if(filters.hasNext()) {
-                PluginExport<Filter> filterExport = filters.next();
+            if(position < filters.length) {
+                PluginFilterIndex.MatchedFilter matched = filters[position++];
 
-                Filter filter = filterExport.getExport() instanceof MappingWrappedFilter ? ((MappingWrappedFilter)filterExport.getExport()).filter : filterExport.getExport();
+                if(matched.servletWrapper) {
+                    this.request.setAttribute(ServletBuilder.MATCHED_MAPPING, matched.mapping);
+                }
 
-                ClassLoader loader = Thread.currentThread().getContextClassLoader();
+                if(matched.timing == null) {
+                    invoke(matched, request, response);
+                } else {
+                    // Time spent further down the chain is added to downstreamNanos, leaving the self time of this filter
+                    long outerDownstreamNanos = downstreamNanos;
+                    downstreamNanos = 0;
+                    long start = System.nanoTime();
+                    try {
+                        invoke(matched, request, response);
+                    } finally {
+                        long inclusive = System.nanoTime() - start;
+                        matched.timing.record(inclusive - downstreamNanos, inclusive);
+                        downstreamNanos = outerDownstreamNanos + inclusive;
+                    }
+                }
+            } else if(timed) {
+                long start = System.nanoTime();
                 try {
-                    Thread.currentThread().setContextClassLoader(filterExport.getClassLoader());
-                    filter.doFilter(request, response, this);
+                    filterChain.doFilter(request, response);
                 } finally {
-                    Thread.currentThread().setContextClassLoader(loader);
+                    downstreamNanos += System.nanoTime() - start;
                 }
             } else {
                 filterChain.doFilter(request, response);
             }
         }
 
+        private void invoke(PluginFilterIndex.MatchedFilter matched, ServletRequest request, ServletResponse response) throws IOException, ServletException {
+            Thread thread = Thread.currentThread();
+            ClassLoader loader = thread.getContextClassLoader();
+            ClassLoader filterLoader = matched.export.getClassLoader();
+            if(loader == filterLoader) {
+                matched.filter.doFilter(request, response, this);
+            } else {
+                try {
+                    thread.setContextClassLoader(filterLoader);
+                    matched.filter.doFilter(request, response, this);
+                } finally {
+                    thread.setContextClassLoader(loader);
+                }
+            }
+        }
+
         private FilterChain getFilterChain() {
             return filterChain;
         }
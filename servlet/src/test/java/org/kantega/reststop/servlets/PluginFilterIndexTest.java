@@ -0,0 +1,201 @@
+/*
+ * Copyright 2018 Kantega AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kantega.reststop.servlets;
+
+import org.junit.Test;
+import org.kantega.reststop.api.PluginExport;
+import org.kantega.reststop.servlet.api.FilterPhase;
+import org.kantega.reststop.servlet.api.ServletBuilder;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class PluginFilterIndexTest {
+
+    private static final String[] SEGMENTS = {"/a", "/b", "/ab", "/a/", "/", ""};
+
+    private int position;
+
+    @Test
+    public void shouldOrderExactAndPrefixMatchesByFilterPosition() {
+        List<PluginExport<Filter>> filters = asList(
+                mapped("/api/*"),
+                unmapped(),
+                mapped("/api/users"),
+                mapped("/api*", "/api/users"),
+                mapped("/other"));
+
+        PluginFilterIndex index = new PluginFilterIndex(filters);
+
+        assertThat(describe(index.resolve(request("/api/users"))), is(asList("0:/api/*", "1:null", "2:/api/users", "3:/api*")));
+        assertThat(describe(index.resolve(request("/api/user"))), is(asList("0:/api/*", "1:null", "3:/api*")));
+        assertThat(describe(index.resolve(request("/apis"))), is(asList("1:null", "3:/api*")));
+        assertThat(describe(index.resolve(request("/other/x"))), is(asList("1:null")));
+        assertThat(describe(index.resolve(request(""))), is(asList("1:null")));
+    }
+
+    @Test
+    public void shouldMatchLinearScanForRandomMappings() {
+        Random random = new Random(17);
+
+        for (int round = 0; round < 200; round++) {
+            List<PluginExport<Filter>> filters = new ArrayList<>();
+            int count = 1 + random.nextInt(8);
+            for (int f = 0; f < count; f++) {
+                if (random.nextInt(5) == 0) {
+                    filters.add(unmapped());
+                } else {
+                    String[] mappings = new String[1 + random.nextInt(3)];
+                    for (int m = 0; m < mappings.length; m++) {
+                        mappings[m] = path(random) + (random.nextBoolean() ? "*" : "");
+                    }
+                    filters.add(mapped(mappings));
+                }
+            }
+
+            PluginFilterIndex index = new PluginFilterIndex(filters);
+
+            for (int r = 0; r < 20; r++) {
+                String path = path(random);
+                assertThat(filters + " " + path, describe(index.resolve(request(path))), is(linearScan(filters, path)));
+            }
+        }
+    }
+
+    /**
+     * The per request scan the index replaces.
+     */
+    private List<String> linearScan(List<PluginExport<Filter>> filters, String path) {
+        List<String> matched = new ArrayList<>();
+        for (PluginExport<Filter> export : filters) {
+            if (export.getExport() instanceof ReststopInitializer.MappingWrappedFilter) {
+                HttpServletRequest request = request(path);
+                if (((ReststopInitializer.MappingWrappedFilter) export.getExport()).mappingMatchesRequest(request)) {
+                    matched.add(export.getPlugin() + ":" + request.getAttribute(ServletBuilder.MATCHED_MAPPING));
+                }
+            } else {
+                matched.add(export.getPlugin() + ":null");
+            }
+        }
+        return matched;
+    }
+
+    private static List<String> describe(PluginFilterIndex.MatchedFilter[] resolved) {
+        List<String> described = new ArrayList<>();
+        for (PluginFilterIndex.MatchedFilter matched : resolved) {
+            described.add(matched.export.getPlugin() + ":" + matched.mapping);
+        }
+        return described;
+    }
+
+    private static String path(Random random) {
+        StringBuilder path = new StringBuilder();
+        int segments = random.nextInt(4);
+        for (int i = 0; i < segments; i++) {
+            path.append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+        }
+        return path.toString();
+    }
+
+    private PluginExport<Filter> mapped(String... mappings) {
+        return export(new ReststopInitializer.MappingWrappedFilter(new NoopFilter(), mappings, FilterPhase.USER));
+    }
+
+    private PluginExport<Filter> unmapped() {
+        return export(new NoopFilter());
+    }
+
+    private PluginExport<Filter> export(Filter filter) {
+        int plugin = position++;
+        return new PluginExport<Filter>() {
+            @Override
+            public Class<Filter> getType() {
+                return Filter.class;
+            }
+
+            @Override
+            public Filter getExport() {
+                return filter;
+            }
+
+            @Override
+            public ClassLoader getClassLoader() {
+                return getClass().getClassLoader();
+            }
+
+            @Override
+            public Object getPlugin() {
+                return plugin;
+            }
+
+            @Override
+            public String toString() {
+                return plugin + (filter instanceof ReststopInitializer.MappingWrappedFilter
+                        ? Arrays.toString(((ReststopInitializer.MappingWrappedFilter) filter).getMappings()) : "");
+            }
+        };
+    }
+
+    private static HttpServletRequest request(String path) {
+        Map<String, Object> attributes = new HashMap<>();
+        return (HttpServletRequest) Proxy.newProxyInstance(PluginFilterIndexTest.class.getClassLoader(), new Class[]{HttpServletRequest.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getContextPath":
+                    return "/ctx";
+                case "getRequestURI":
+                    return "/ctx" + path;
+                case "setAttribute":
+                    attributes.put((String) args[0], args[1]);
+                    return null;
+                case "getAttribute":
+                    return attributes.get(args[0]);
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private static class NoopFilter implements Filter {
+        @Override
+        public void init(FilterConfig filterConfig) {
+
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) {
+
+        }
+
+        @Override
+        public void destroy() {
+
+        }
+    }
+}